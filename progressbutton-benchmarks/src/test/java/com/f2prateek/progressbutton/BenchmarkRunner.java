@@ -0,0 +1,88 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Runs an operation in a fixed number of warmup and measured rounds, and reports the time and
+ * allocations per operation.
+ * <p/>
+ * Every round runs the same number of operations after a garbage collection, and the median
+ * round is reported, so results are comparable between runs on the same machine.
+ */
+final class BenchmarkRunner {
+  static final int WARMUP_ROUNDS = 5;
+  static final int MEASURED_ROUNDS = 15;
+
+  /** An operation to benchmark. */
+  interface Operation {
+    /** Run the operation once, iteration counts up from 0 within a round. */
+    void run(int iteration);
+  }
+
+  private BenchmarkRunner() {
+    // no instances
+  }
+
+  /**
+   * Benchmark the given operation, running it the given number of times per round, and print the
+   * results.
+   */
+  static void run(String name, int operationsPerRound, Operation operation) {
+    for (int round = 0; round < WARMUP_ROUNDS; round++) {
+      for (int i = 0; i < operationsPerRound; i++) {
+        operation.run(i);
+      }
+    }
+
+    final long[] roundNanos = new long[MEASURED_ROUNDS];
+    long allocatedBytes = 0;
+    for (int round = 0; round < MEASURED_ROUNDS; round++) {
+      System.gc();
+      final long startBytes = allocatedBytes();
+      final long start = System.nanoTime();
+      for (int i = 0; i < operationsPerRound; i++) {
+        operation.run(i);
+      }
+      roundNanos[round] = System.nanoTime() - start;
+      allocatedBytes += allocatedBytes() - startBytes;
+    }
+
+    Arrays.sort(roundNanos);
+    final double medianNanos = (double) roundNanos[MEASURED_ROUNDS / 2] / operationsPerRound;
+    final double minNanos = (double) roundNanos[0] / operationsPerRound;
+    final double bytes = (double) allocatedBytes / (MEASURED_ROUNDS * operationsPerRound);
+    System.out.println(String.format("%-32s %12.1f ns/op %12.1f ns/op (min) %10.1f B/op", name,
+        medianNanos, minNanos, bytes));
+  }
+
+  /**
+   * Returns the number of bytes allocated by the current thread so far, or 0 if the JVM can't
+   * report it.
+   */
+  static long allocatedBytes() {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(
+          Thread.currentThread().getId());
+    }
+    return 0;
+  }
+}
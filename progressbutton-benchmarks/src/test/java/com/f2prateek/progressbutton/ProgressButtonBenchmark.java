@@ -0,0 +1,193 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.app.Activity;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.view.View;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+/**
+ * Benchmarks for the hot paths of {@link ProgressButton}: construction, drawing onto a software
+ * canvas, progress updates, animation frames and copying through a {@link ProgressInputStream},
+ * for a number of buttons set by the {@code benchmark.buttons} system property.
+ * <p/>
+ * These run on the JVM, so drawing includes the cost of Robolectric's shadows. Numbers are meant
+ * to be compared between revisions on the same machine, not against a device.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = "../progressbutton/src/main/AndroidManifest.xml")
+public class ProgressButtonBenchmark {
+  private static final int BUTTONS = Integer.getInteger("benchmark.buttons", 200);
+  private static final long FRAME_NANOS = 16666667;
+
+  private Activity activity;
+  private ProgressButton[] buttons;
+  private Canvas canvas;
+  private long frameTimeNanos;
+
+  @Before public void setUp() {
+    activity = Robolectric.buildActivity(Activity.class).create().get();
+    buttons = new ProgressButton[BUTTONS];
+    for (int i = 0; i < BUTTONS; i++) {
+      buttons[i] = createButton();
+    }
+    final int size = buttons[0].getMeasuredWidth();
+    canvas = new Canvas(Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888));
+    frameTimeNanos = FRAME_NANOS;
+  }
+
+  private ProgressButton createButton() {
+    final ProgressButton button = new ProgressButton(activity);
+    final int spec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+    button.measure(spec, spec);
+    button.layout(0, 0, button.getMeasuredWidth(), button.getMeasuredHeight());
+    return button;
+  }
+
+  /** Tick the shared clock as if a frame had passed. */
+  private void doFrame() {
+    frameTimeNanos += FRAME_NANOS;
+    AnimationClock.getInstance().doFrame(frameTimeNanos);
+  }
+
+  @Test public void construction() {
+    BenchmarkRunner.run("construction", BUTTONS, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        createButton();
+      }
+    });
+  }
+
+  @Test public void constructionFromConfig() {
+    final ProgressButtonConfig config =
+        ProgressButtonConfig.fromStyle(activity, R.attr.progressButtonStyle);
+    BenchmarkRunner.run("constructionFromConfig", BUTTONS, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        config.newButton(activity);
+      }
+    });
+  }
+
+  @Test public void draw() {
+    BenchmarkRunner.run("draw", BUTTONS, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        buttons[iteration].draw(canvas);
+      }
+    });
+  }
+
+  @Test public void drawAnimating() {
+    for (ProgressButton button : buttons) {
+      button.startAnimating();
+    }
+    BenchmarkRunner.run("drawAnimating", BUTTONS, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        buttons[iteration].draw(canvas);
+      }
+    });
+  }
+
+  @Test public void drawCachedLayers() {
+    for (ProgressButton button : buttons) {
+      button.setStaticLayerCacheEnabled(true);
+      button.setArcPathResolution(360);
+    }
+    BenchmarkRunner.run("drawCachedLayers", BUTTONS, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        buttons[iteration].draw(canvas);
+      }
+    });
+  }
+
+  @Test public void setProgress() {
+    BenchmarkRunner.run("setProgress", BUTTONS * 100, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        buttons[iteration % BUTTONS].setProgress(iteration / BUTTONS);
+      }
+    });
+  }
+
+  @Test public void animationFrame() {
+    for (ProgressButton button : buttons) {
+      button.startAnimating();
+    }
+    // Buttons that aren't drawn pause their animation, so every frame draws them all.
+    BenchmarkRunner.run("animationFrame", 100, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        doFrame();
+        for (ProgressButton button : buttons) {
+          button.draw(canvas);
+        }
+      }
+    });
+  }
+
+  @Test public void copyStream() {
+    final byte[] data = new byte[1024 * 1024];
+    final byte[] buffer = new byte[8192];
+    BenchmarkRunner.run("copyStream", 10, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        copy(new ByteArrayInputStream(data), buffer);
+      }
+    });
+  }
+
+  @Test public void copyProgressInputStream() {
+    final byte[] data = new byte[1024 * 1024];
+    final byte[] buffer = new byte[8192];
+    BenchmarkRunner.run("copyProgressInputStream", 10, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        copy(new ProgressInputStream(new ByteArrayInputStream(data), buttons[0], data.length),
+            buffer);
+      }
+    });
+  }
+
+  /** Read the whole stream into the buffer, like copying it would. */
+  private static void copy(InputStream in, byte[] buffer) {
+    try {
+      while (in.read(buffer) != -1) {
+      }
+      in.close();
+    } catch (IOException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  @Test public void progressTweenFrame() {
+    BenchmarkRunner.run("progressTweenFrame", 100, new BenchmarkRunner.Operation() {
+      @Override public void run(int iteration) {
+        if (iteration % 10 == 0) {
+          for (ProgressButton button : buttons) {
+            button.setProgress(button.getProgress() == 0 ? 100 : 0, true);
+          }
+        }
+        doFrame();
+      }
+    });
+  }
+}
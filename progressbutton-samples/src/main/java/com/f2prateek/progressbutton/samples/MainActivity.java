@@ -7,6 +7,7 @@ import android.widget.LinearLayout;
 import android.widget.SeekBar;
 import android.widget.ToggleButton;
 import com.f2prateek.progressbutton.ProgressButton;
+import com.f2prateek.progressbutton.ProgressButtonGroup;
 
 /**
  * Examples.
@@ -74,35 +75,20 @@ public class MainActivity extends Activity {
     progressButton8.setClickable(true);
     progressButton8.setFocusable(true);
 
-    CompoundButton.OnCheckedChangeListener checkedChangeListener =
-        new CompoundButton.OnCheckedChangeListener() {
-          @Override public void onCheckedChanged(CompoundButton compoundButton, boolean checked) {
-            updatePinProgressContentDescription((ProgressButton) compoundButton);
-          }
-        };
-
-    progressButton1.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton2.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton3.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton4.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton5.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton6.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton7.setOnCheckedChangeListener(checkedChangeListener);
-    progressButton8.setOnCheckedChangeListener(checkedChangeListener);
+    // Every button follows the seek bar, and the group applies all of them in one pass on the
+    // next frame. Content descriptions keep up with the pinned state and progress on their own.
+    final ProgressButton[] progressButtons = {
+        progressButton1, progressButton2, progressButton3, progressButton4, progressButton5,
+        progressButton6, progressButton7, progressButton8, progressButton9, progressButton10
+    };
+    final ProgressButtonGroup progressButtonGroup = new ProgressButtonGroup();
 
     SeekBar progressSeekBar = (SeekBar) findViewById(R.id.progress_seek_bar);
     progressSeekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
       @Override public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-        updateProgressButton(progressButton1, seekBar);
-        updateProgressButton(progressButton2, seekBar);
-        updateProgressButton(progressButton3, seekBar);
-        updateProgressButton(progressButton4, seekBar);
-        updateProgressButton(progressButton5, seekBar);
-        updateProgressButton(progressButton6, seekBar);
-        updateProgressButton(progressButton7, seekBar);
-        updateProgressButton(progressButton8, seekBar);
-        updateProgressButton(progressButton9, seekBar);
-        updateProgressButton(progressButton10, seekBar);
+        for (ProgressButton progressButton : progressButtons) {
+          progressButtonGroup.setProgress(progressButton, progress);
+        }
       }
 
       @Override public void onStartTrackingTouch(SeekBar seekBar) {
@@ -112,16 +98,9 @@ public class MainActivity extends Activity {
       }
     });
 
-    updateProgressButton(progressButton1, progressSeekBar);
-    updateProgressButton(progressButton2, progressSeekBar);
-    updateProgressButton(progressButton3, progressSeekBar);
-    updateProgressButton(progressButton4, progressSeekBar);
-    updateProgressButton(progressButton5, progressSeekBar);
-    updateProgressButton(progressButton6, progressSeekBar);
-    updateProgressButton(progressButton7, progressSeekBar);
-    updateProgressButton(progressButton8, progressSeekBar);
-    updateProgressButton(progressButton9, progressSeekBar);
-    updateProgressButton(progressButton10, progressSeekBar);
+    for (ProgressButton progressButton : progressButtons) {
+      progressButton.setProgress(progressSeekBar.getProgress());
+    }
 
     final ToggleButton toggleButton = (ToggleButton) findViewById(R.id.toggle_button);
     toggleButton.setOnCheckedChangeListener(new CompoundButton.OnCheckedChangeListener() {
@@ -142,35 +121,6 @@ public class MainActivity extends Activity {
     });
   }
 
-  /**
-   * Helper method to update the progressButton's progress and it's
-   * content description.
-   */
-  private void updateProgressButton(ProgressButton progressButton, SeekBar progressSeekBar) {
-    progressButton.setProgress(progressSeekBar.getProgress());
-    updatePinProgressContentDescription(progressButton);
-  }
-
-  /**
-   * Helper method to update the progressButton's content description.
-   */
-  private void updatePinProgressContentDescription(ProgressButton button) {
-    int progress = button.getProgress();
-    if (progress <= 0) {
-      button.setContentDescription(getString(
-          button.isChecked() ? R.string.content_desc_pinned_not_downloaded
-              : R.string.content_desc_unpinned_not_downloaded));
-    } else if (progress >= button.getMax()) {
-      button.setContentDescription(getString(
-          button.isChecked() ? R.string.content_desc_pinned_downloaded
-              : R.string.content_desc_unpinned_downloaded));
-    } else {
-      button.setContentDescription(getString(
-          button.isChecked() ? R.string.content_desc_pinned_downloading
-              : R.string.content_desc_unpinned_downloading));
-    }
-  }
-
   /**
    * Helper function that creates a new progress button, adds it to the given layout.
    * Returns a reference to the progress button for customization.
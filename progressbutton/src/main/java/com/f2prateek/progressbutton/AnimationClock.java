@@ -0,0 +1,172 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Message;
+import android.view.Choreographer;
+import java.util.ArrayList;
+
+/**
+ * A process wide clock that ticks every registered {@link Callback} once per frame.
+ * <p/>
+ * On Jelly Bean and above frames are driven by the {@link Choreographer}, so ticks are aligned
+ * with vsync. On older platforms a single {@link Handler} emulates the frame rate. The clock only
+ * schedules frames while at least one callback is registered.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+final class AnimationClock {
+  /** Frame interval used when the {@link Choreographer} is not available. */
+  static final long FALLBACK_FRAME_DELAY = 16;
+
+  /** Receives a tick on every frame while it is registered with the clock. */
+  interface Callback {
+    /**
+     * Called once per frame.
+     *
+     * @param frameTimeNanos the time at which the frame started, in the {@link System#nanoTime()}
+     * time base.
+     */
+    void doFrame(long frameTimeNanos);
+  }
+
+  /** Posts frames to the clock. */
+  abstract static class FrameScheduler {
+    AnimationClock mClock;
+
+    /** Request a single call to {@link AnimationClock#doFrame(long)} on the next frame. */
+    abstract void postFrame();
+
+    /** Cancel a frame previously requested with {@link #postFrame()}. */
+    abstract void cancelFrame();
+  }
+
+  private static AnimationClock sInstance;
+
+  private final FrameScheduler mScheduler;
+  private final ArrayList<Callback> mCallbacks = new ArrayList<Callback>();
+  /** Reused across frames so that dispatching doesn't allocate. */
+  private Callback[] mDispatchCallbacks = new Callback[8];
+  private boolean mFramePending;
+
+  AnimationClock(FrameScheduler scheduler) {
+    mScheduler = scheduler;
+    mScheduler.mClock = this;
+  }
+
+  /** Returns the clock shared by every {@link ProgressButton} in this process. */
+  static AnimationClock getInstance() {
+    if (sInstance == null) {
+      FrameScheduler scheduler;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+        scheduler = new ChoreographerFrameScheduler();
+      } else {
+        scheduler = new HandlerFrameScheduler();
+      }
+      sInstance = new AnimationClock(scheduler);
+    }
+    return sInstance;
+  }
+
+  /** Start ticking the given callback. Adding a registered callback has no effect. */
+  void addCallback(Callback callback) {
+    if (!mCallbacks.contains(callback)) {
+      mCallbacks.add(callback);
+    }
+    if (!mFramePending) {
+      mFramePending = true;
+      mScheduler.postFrame();
+    }
+  }
+
+  /** Stop ticking the given callback. The clock stops once no callbacks are left. */
+  void removeCallback(Callback callback) {
+    mCallbacks.remove(callback);
+    if (mCallbacks.isEmpty() && mFramePending) {
+      mFramePending = false;
+      mScheduler.cancelFrame();
+    }
+  }
+
+  /** Returns true if the given callback is registered. */
+  boolean hasCallback(Callback callback) {
+    return mCallbacks.contains(callback);
+  }
+
+  /** Tick every registered callback and schedule the next frame if any are left. */
+  void doFrame(long frameTimeNanos) {
+    mFramePending = false;
+
+    // Callbacks may add or remove themselves while being ticked, so tick a copy.
+    final int count = mCallbacks.size();
+    if (mDispatchCallbacks.length < count) {
+      mDispatchCallbacks = new Callback[count * 2];
+    }
+    for (int i = 0; i < count; i++) {
+      mDispatchCallbacks[i] = mCallbacks.get(i);
+    }
+    for (int i = 0; i < count; i++) {
+      mDispatchCallbacks[i].doFrame(frameTimeNanos);
+      mDispatchCallbacks[i] = null;
+    }
+
+    if (!mCallbacks.isEmpty() && !mFramePending) {
+      mFramePending = true;
+      mScheduler.postFrame();
+    }
+  }
+
+  /** Drives the clock from the {@link Choreographer}. Only loaded on Jelly Bean and above. */
+  static final class ChoreographerFrameScheduler extends FrameScheduler
+      implements Choreographer.FrameCallback {
+    private final Choreographer mChoreographer = Choreographer.getInstance();
+
+    @Override void postFrame() {
+      mChoreographer.postFrameCallback(this);
+    }
+
+    @Override void cancelFrame() {
+      mChoreographer.removeFrameCallback(this);
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+      mClock.doFrame(frameTimeNanos);
+    }
+  }
+
+  /** Emulates frames with a {@link Handler} on platforms without a {@link Choreographer}. */
+  static final class HandlerFrameScheduler extends FrameScheduler implements Handler.Callback {
+    private static final int MSG_FRAME = 0;
+    private final Handler mHandler = new Handler(Looper.getMainLooper(), this);
+
+    @Override void postFrame() {
+      mHandler.sendEmptyMessageDelayed(MSG_FRAME, FALLBACK_FRAME_DELAY);
+    }
+
+    @Override void cancelFrame() {
+      mHandler.removeMessages(MSG_FRAME);
+    }
+
+    @Override public boolean handleMessage(Message msg) {
+      mClock.doFrame(System.nanoTime());
+      return true;
+    }
+  }
+}
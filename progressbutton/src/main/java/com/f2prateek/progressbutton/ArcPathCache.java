@@ -0,0 +1,97 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Wedge shaped {@link Path}s for a circle of a given size, with sweep angles quantized to a given
+ * number of steps per revolution.
+ * <p/>
+ * Paths start at the top of the circle, sweep clockwise, and are positioned with the top left of
+ * the circle at the origin. Caches are shared by every {@link ProgressButton} with the same inner
+ * size and resolution, and paths are built the first time they are drawn.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+final class ArcPathCache {
+  private static final Map<Long, ArcPathCache> CACHES = new HashMap<Long, ArcPathCache>();
+
+  private final RectF mOval = new RectF();
+  private final float mCenter;
+  private final int mResolution;
+  /** Paths indexed by step, from an empty wedge to the full circle. */
+  private final Path[] mPaths;
+
+  private ArcPathCache(int innerSize, int resolution) {
+    mOval.set(-0.5f, -0.5f, innerSize + 0.5f, innerSize + 0.5f);
+    mCenter = innerSize / 2f;
+    mResolution = resolution;
+    mPaths = new Path[resolution + 1];
+  }
+
+  /** Returns the cache for circles of the given size, quantized to the given resolution. */
+  static ArcPathCache get(int innerSize, int resolution) {
+    if (resolution <= 0) {
+      throw new IllegalArgumentException(
+          String.format("Resolution (%d) must be > 0", resolution));
+    }
+    final Long key = ((long) innerSize << 32) | resolution;
+    ArcPathCache cache = CACHES.get(key);
+    if (cache == null) {
+      cache = new ArcPathCache(innerSize, resolution);
+      CACHES.put(key, cache);
+    }
+    return cache;
+  }
+
+  /** Remove every path from the cache. */
+  static void clear() {
+    CACHES.clear();
+  }
+
+  /** Returns the center of the circle, along both axes. */
+  float getCenter() {
+    return mCenter;
+  }
+
+  /**
+   * Returns a wedge with the given sweep angle, rounded to the nearest step. A sweep that isn't
+   * empty is at least one step, so narrow wedges like the animation strip don't disappear at
+   * coarse resolutions.
+   */
+  Path getWedge(float sweepAngle) {
+    int step = Math.round(sweepAngle * mResolution / 360f);
+    step = Math.max(sweepAngle > 0 ? 1 : 0, Math.min(step, mResolution));
+    Path path = mPaths[step];
+    if (path == null) {
+      path = new Path();
+      if (step == mResolution) {
+        path.addOval(mOval, Path.Direction.CW);
+      } else if (step > 0) {
+        path.moveTo(mCenter, mCenter);
+        path.arcTo(mOval, -90, 360f * step / mResolution);
+        path.close();
+      }
+      mPaths[step] = path;
+    }
+    return path;
+  }
+}
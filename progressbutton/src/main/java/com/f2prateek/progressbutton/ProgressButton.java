@@ -19,18 +19,22 @@ package com.f2prateek.progressbutton;
 
 import android.content.Context;
 import android.content.res.Resources;
-import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
+import android.os.Build;
 import android.os.Handler;
-import android.os.Message;
+import android.os.Looper;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.util.AttributeSet;
+import android.view.View;
 import android.widget.CompoundButton;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * A two-state button that indicates whether some related content is pinned
@@ -45,65 +49,264 @@ import android.widget.CompoundButton;
  * By default the button is not clickable (by the user). If you want the user to be able to control
  * the state,
  * use {@link android.view.View#setClickable(boolean)}.
+ * <p/>
+ * The indicator itself is rendered by a {@link ProgressDrawable}, which can also be used without a
+ * view.
+ * <p/>
+ * The size of the button only depends on the size of its shadow drawable. Changing the progress,
+ * max, colors, pinned state, animation or inner size only redraws the button and never requests
+ * a layout, so there is no need to call {@link #requestLayout()} after updating it. Setting a
+ * shadow drawable of a different size requests a single layout.
  *
  * @see android.view.View#setClickable(boolean)
  * @see android.view.View#setFocusable(boolean)
  */
 public class ProgressButton extends CompoundButton {
+  /** Handler used to hand progress posted from other threads over to the main thread. */
+  private static final Handler MAIN_THREAD_HANDLER = new Handler(Looper.getMainLooper());
+  /** Metrics of every button with metrics enabled. */
+  private static final ProgressButtonMetrics GLOBAL_METRICS = new ProgressButtonMetrics(null);
+  /** Value of {@link #mPendingProgress} when there is no posted progress to apply. */
+  private static final long NO_PENDING_PROGRESS = -1;
+  /** Value of {@link #mPendingMax} when the posted progress keeps the current max. */
+  private static final long NO_PENDING_MAX = 0;
+
+  /** Frames the strip may be invalidated without being drawn before the animation is paused. */
+  private static final int MAX_UNDRAWN_FRAMES = 30;
+
+  /** The animation strip was animating, and its elapsed time is saved. */
+  private static final int SAVED_ANIMATING = 1;
+  /** The circle color was changed, and is saved. */
+  private static final int SAVED_CIRCLE_COLOR = 1 << 1;
+  /** The progress color was changed, and is saved. */
+  private static final int SAVED_PROGRESS_COLOR = 1 << 2;
+  /** The animation settings were changed, and are saved. */
+  private static final int SAVED_ANIMATION_SETTINGS = 1 << 3;
+
+  /** No progress has been made. */
+  public static final int DOWNLOAD_STATE_NOT_DOWNLOADED = 0;
+  /** Some progress has been made, but it hasn't reached the max. */
+  public static final int DOWNLOAD_STATE_DOWNLOADING = 1;
+  /** The progress has reached the max. */
+  public static final int DOWNLOAD_STATE_DOWNLOADED = 2;
+  private static final int DOWNLOAD_STATE_COUNT = 3;
+  /** Number of content descriptions, one for every pinned state and download state. */
+  static final int STATE_CONTENT_DESCRIPTION_COUNT = 2 * DOWNLOAD_STATE_COUNT;
 
   /** The maximum progress. Defaults to 100. */
-  private int mMax = 100;
+  private long mMax = ProgressButtonConfig.DEFAULT_MAX;
   /** The current progress. Defaults to 0. */
-  private int mProgress = 0;
-  /** The drawable used as the shadow. */
-  private Drawable mShadowDrawable;
-  /** The drawable displayed when the user unpins an item. */
-  private Drawable mUnpinnedDrawable;
-  /** The drawable displayed when the user pins an item. */
-  private Drawable mPinnedDrawable;
-  /** The paint for the circle. */
-  private Paint mCirclePaint;
+  private long mProgress = 0;
+  /** Renders the circle, progress arc, animation strip, pin and shadow. */
+  private ProgressDrawable mProgressDrawable;
   /** True if the view is animating. Defaults to false. */
   private boolean mAnimating = false;
   /** Animation speed. Defaults to 1. */
-  private int mAnimationSpeed = 1;
-  /** Delay between animation frames. Defaults to 50. */
-  private int mAnimationDelay = 50;
-  /** Width of the animation strip. Defaults to 6. */
-  private int mAnimationStripWidth = 6;
-  /** Internal variable to track animation state. */
-  private int mAnimationProgress = 0;
+  private int mAnimationSpeed = ProgressButtonConfig.DEFAULT_ANIMATION_SPEED;
+  /** Time between animation steps, in milliseconds. Defaults to 50. */
+  private int mAnimationDelay = ProgressButtonConfig.DEFAULT_ANIMATION_DELAY;
+  /**
+   * Revolutions per second of the animation strip, or 0 to derive it from
+   * {@link #mAnimationSpeed} and {@link #mAnimationDelay}. Defaults to 0.
+   */
+  private float mAnimationRevolutionsPerSecond = 0;
+  /** True if the drawn progress arc is being tweened towards the progress. */
+  private boolean mTweening = false;
+  /** The sweep angle the current tween started from. */
+  private float mTweenStartAngle;
+  /** Frame time at which the current tween started, or 0 if it hasn't seen a frame yet. */
+  private long mTweenStartTimeNanos;
+  /** Duration of progress tweens, in milliseconds. Defaults to 200. */
+  private int mProgressAnimationDuration =
+      ProgressButtonConfig.DEFAULT_PROGRESS_ANIMATION_DURATION;
+  /** True if a hardware layer is used while the button animates. Defaults to false. */
+  private boolean mAutomaticHardwareLayer = false;
+  /** True if the current hardware layer was set by {@link #updateHardwareLayer()}. */
+  private boolean mHardwareLayerActive = false;
+  /**
+   * Content descriptions for every pinned state and download state, indexed by
+   * {@link #getContentDescriptionIndex(boolean, int)}. A null description leaves the content
+   * description untouched.
+   */
+  private final CharSequence[] mStateContentDescriptions =
+      new CharSequence[STATE_CONTENT_DESCRIPTION_COUNT];
+  /** True if the content description follows the pinned and download state. */
+  private boolean mAutomaticContentDescription = true;
+  /** Index of the current content description, or -1 if it must be set again. */
+  private int mContentDescriptionIndex = -1;
+  /** The state displayed by this button, or null if none is bound. */
+  private ProgressState mState;
+  /** True while the button is detached from its window, and doesn't follow its state. */
+  private boolean mDetached = false;
+  /** True while the button is temporarily detached by a list that is recycling it. */
+  private boolean mTemporarilyDetached = false;
+  // Not initialized, as they may be set by the super constructor.
+  /** True while the button or one of its ancestors isn't visible. */
+  private boolean mHidden;
+  /** True while the window of the button isn't visible. */
+  private boolean mWindowHidden;
+  /** Frames that invalidated the animation strip since the button was last drawn. */
+  private int mUndrawnFrames = 0;
+  /**
+   * True while the button is animating but isn't ticked by the clock, because it can't be seen.
+   * The animation keeps its start time, so it resumes where it would have been had it kept going.
+   */
+  private boolean mAnimationPaused = false;
+  /** True while {@link #applyUpdate(long, long, boolean)} collects invalidations. */
+  private boolean mDeferInvalidate = false;
+  /** True if the inner circle was invalidated while invalidations were deferred. */
+  private boolean mInnerCircleInvalidated = false;
+  /** True if the whole drawable was invalidated while invalidations were deferred. */
+  private boolean mDrawableInvalidated = false;
 
   /**
-   * The paint to show the progress.
+   * The latest progress posted from any thread, or {@link #NO_PENDING_PROGRESS}.
    *
-   * @see #mProgress
-   */
-  private Paint mProgressPaint;
-  private Rect mTempRect = new Rect();
-  private RectF mTempRectF = new RectF();
-  private int mDrawableSize;
-  private int mInnerSize;
-
-  private Handler mAnimationHandler = new Handler() {
-    /**
-     * This is the code that will increment the progress variable
-     * and so spin the wheel
-     */
-    @Override public void handleMessage(Message msg) {
-      if (mAnimating) {
-        invalidate();
-        mAnimationProgress += mAnimationSpeed;
-        if (mAnimationProgress > mMax) {
-          mAnimationProgress = mProgress;
-        }
-        mAnimationHandler.sendEmptyMessageDelayed(0, mAnimationDelay);
+   * @see #postProgress(long)
+   */
+  private final AtomicLong mPendingProgress = new AtomicLong(NO_PENDING_PROGRESS);
+  /**
+   * The latest max posted from any thread, or {@link #NO_PENDING_MAX} to keep the current max.
+   *
+   * @see #postProgressAndMax(long, long)
+   */
+  private final AtomicLong mPendingMax = new AtomicLong(NO_PENDING_MAX);
+  /**
+   * The segments the progress is split into, or null if it isn't, read by posting threads.
+   *
+   * @see #setSegments(long...)
+   */
+  private volatile Segments mSegments;
+  /** The drawable size the measured size was resolved for, or -1 if it hasn't been measured. */
+  private int mMeasuredDrawableSize = -1;
+  /** The width measure spec the measured size was resolved for. */
+  private int mMeasuredWidthSpec;
+  /** The height measure spec the measured size was resolved for. */
+  private int mMeasuredHeightSpec;
+  private int mCachedMeasuredWidth;
+  private int mCachedMeasuredHeight;
+  /** Rendering metrics of this button, or null if they aren't collected. */
+  private ProgressButtonMetrics mMetrics;
+  /** True while applying posted segment progress is scheduled. */
+  private final AtomicBoolean mSegmentProgressPending = new AtomicBoolean();
+  /** The max when {@link #mMinimumVisibleProgressDelta} was computed, read by posting threads. */
+  private volatile long mThresholdMax;
+  /** The smallest visible change of progress, read by posting threads. */
+  private volatile long mMinimumVisibleProgressDelta;
+  /** The progress most recently set or posted, read by posting threads. */
+  private volatile long mLastPostedProgress;
+
+  /**
+   * Applies the latest posted progress on the frame after it was posted. Posted to the main thread
+   * first, where it waits for the next frame.
+   */
+  private final FrameCallback mPendingProgressCallback =
+      new FrameCallback(this, FrameCallback.PENDING_PROGRESS);
+
+  /** Moves the displayed progress arc towards the progress on every frame of a tween. */
+  private final FrameCallback mTweenCallback = new FrameCallback(this, FrameCallback.TWEEN);
+
+  /** Frame time at which the animation started, or 0 if it hasn't seen a frame yet. */
+  private long mAnimationStartTimeNanos;
+  /**
+   * Time the animation has been running for as of its latest frame. The animation resumes from
+   * here when {@link #mAnimationStartTimeNanos} is reset.
+   */
+  private long mAnimationElapsedNanos;
+  /**
+   * The {@code SAVED_*} flags of the properties that have been set since the button was inflated,
+   * which are saved with its instance state.
+   */
+  private int mChangedProperties;
+
+  /** Positions the strip by elapsed time on every frame of the shared {@link AnimationClock}. */
+  private final FrameCallback mAnimationCallback = new FrameCallback(this, FrameCallback.ANIMATION);
+
+  /**
+   * Ticks a button from the shared {@link AnimationClock} and the main thread handler without
+   * holding on to it. Both outlive any activity, so a button that is never detached, or never
+   * attached in the first place, can still be collected while it animates or has progress posted.
+   * A callback whose button is gone removes itself from the clock.
+   */
+  private static final class FrameCallback implements AnimationClock.Callback, Runnable {
+    static final int ANIMATION = 0;
+    static final int TWEEN = 1;
+    static final int PENDING_PROGRESS = 2;
+
+    private final WeakReference<ProgressButton> mButton;
+    private final int mType;
+
+    FrameCallback(ProgressButton button, int type) {
+      mButton = new WeakReference<ProgressButton>(button);
+      mType = type;
+    }
+
+    @Override public void doFrame(long frameTimeNanos) {
+      final ProgressButton button = mButton.get();
+      if (button == null) {
+        AnimationClock.getInstance().removeCallback(this);
+        return;
+      }
+      switch (mType) {
+        case ANIMATION:
+          button.doAnimationFrame(frameTimeNanos);
+          break;
+        case TWEEN:
+          button.doTweenFrame(frameTimeNanos);
+          break;
+        default:
+          AnimationClock.getInstance().removeCallback(this);
+          button.applyPendingProgress();
+          break;
       }
     }
-  };
+
+    /** Wait for the next frame, called on the main thread after progress has been posted. */
+    @Override public void run() {
+      if (mButton.get() != null) {
+        AnimationClock.getInstance().addCallback(this);
+      }
+    }
+  }
+
+  /**
+   * The sizes and progress of the segments the progress is split into. Every segment has its own
+   * slot in the progress array, a cache line apart from the others, so threads posting the
+   * progress of different segments never contend for the same memory.
+   */
+  private static final class Segments {
+    /** Longs between the slots of two segments, 64 bytes. */
+    private static final int STRIDE = 8;
+
+    final long[] mSizes;
+    /** The sum of the sizes of the segments before each segment. */
+    final long[] mOffsets;
+    final long mTotal;
+    private final AtomicLongArray mProgress;
+
+    Segments(long[] sizes) {
+      mSizes = sizes;
+      mOffsets = new long[sizes.length];
+      long total = 0;
+      for (int i = 0; i < sizes.length; i++) {
+        mOffsets[i] = total;
+        total += sizes[i];
+      }
+      mTotal = total;
+      mProgress = new AtomicLongArray(sizes.length * STRIDE);
+    }
+
+    long getProgress(int segment) {
+      return mProgress.get(segment * STRIDE);
+    }
+
+    void setProgress(int segment, long progress) {
+      mProgress.set(segment * STRIDE, progress);
+    }
+  }
 
   public ProgressButton(Context context) {
-    this(context, null);
+    this(context, (AttributeSet) null);
   }
 
   public ProgressButton(Context context, AttributeSet attrs) {
@@ -112,108 +315,174 @@ public class ProgressButton extends CompoundButton {
 
   public ProgressButton(Context context, AttributeSet attrs, int defStyle) {
     super(context, attrs, defStyle);
-    init(context, attrs, defStyle);
+    init(ProgressButtonConfig.fromAttributes(context, attrs, defStyle));
+  }
+
+  /**
+   * Create a button from a resolved config.
+   *
+   * @see ProgressButtonConfig#newButton(Context)
+   */
+  ProgressButton(Context context, ProgressButtonConfig config) {
+    super(context, null, R.attr.progressButtonStyle);
+    init(config);
   }
 
   /**
    * Initialise the {@link ProgressButton}.
    *
-   * @param context the application environment
-   * @param attrs Attribute Set provided
-   * @param defStyle The style resource to pull from
-   */
-  private void init(Context context, AttributeSet attrs, int defStyle) {
-    // Attribute initialization
-    final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ProgressButton, defStyle,
-        R.style.ProgressButton_Pin_Compat);
+   * @param config the resolved attributes of the button
+   */
+  private void init(ProgressButtonConfig config) {
     final Resources res = getResources();
 
-    mProgress = a.getInteger(R.styleable.ProgressButton_progress, mProgress);
-    mMax = a.getInteger(R.styleable.ProgressButton_max, mMax);
-
-    int circleColor = res.getColor(R.color.progress_default_circle_color);
-    circleColor = a.getColor(R.styleable.ProgressButton_circleColor, circleColor);
-    int progressColor = res.getColor(R.color.progress_default_progress_color);
-    progressColor = a.getColor(R.styleable.ProgressButton_progressColor, progressColor);
-
-    int pinnedDrawable =
-        a.getResourceId(R.styleable.ProgressButton_pinnedDrawable, R.drawable.pin_progress_pinned);
-    mPinnedDrawable = res.getDrawable(pinnedDrawable);
-    mPinnedDrawable.setCallback(this);
-
-    int unpinnedDrawable = a.getResourceId(R.styleable.ProgressButton_unpinnedDrawable,
-        R.drawable.pin_progress_unpinned);
-    mUnpinnedDrawable = res.getDrawable(unpinnedDrawable);
-    mUnpinnedDrawable.setCallback(this);
-
-    int shadowDrawable =
-        a.getResourceId(R.styleable.ProgressButton_shadowDrawable, R.drawable.pin_progress_shadow);
-    mShadowDrawable = res.getDrawable(shadowDrawable);
-    mShadowDrawable.setCallback(this);
-
-    mInnerSize = res.getDimensionPixelSize(R.dimen.progress_inner_size);
-    mInnerSize = a.getDimensionPixelSize(R.styleable.ProgressButton_innerSize, mInnerSize);
-
-    setChecked(a.getBoolean(R.styleable.ProgressButton_pinned, false));
-    setClickable(a.getBoolean(R.styleable.ProgressButton_android_clickable, false));
-    setFocusable(a.getBoolean(R.styleable.ProgressButton_android_focusable, false));
-    setBackgroundDrawable(a.getDrawable(R.styleable.ProgressButton_android_background));
-
-    mAnimating = a.getBoolean(R.styleable.ProgressButton_animating, mAnimating);
-    mAnimationSpeed = a.getInteger(R.styleable.ProgressButton_animationSpeed, mAnimationSpeed);
-    mAnimationDelay = a.getInteger(R.styleable.ProgressButton_animationDelay, mAnimationDelay);
-    mAnimationStripWidth =
-        a.getInteger(R.styleable.ProgressButton_animationStripWidth, mAnimationStripWidth);
-
-    a.recycle();
-
-    mDrawableSize = mShadowDrawable.getIntrinsicWidth();
-
-    mCirclePaint = new Paint();
-    mCirclePaint.setColor(circleColor);
-    mCirclePaint.setAntiAlias(true);
+    mProgress = config.getProgress();
+    mMax = config.getMax();
+
+    mProgressDrawable =
+        new ProgressDrawable(SharedResources.getDrawable(res, config.getPinnedDrawable()),
+            SharedResources.getDrawable(res, config.getUnpinnedDrawable()),
+            SharedResources.getDrawable(res, config.getShadowDrawable()), config.getInnerSize(),
+            config.getCircleColor(), config.getProgressColor());
+    mProgressDrawable.setCallback(this);
+
+    setChecked(config.isPinned());
+    setClickable(config.isClickable());
+    setFocusable(config.isFocusable());
+    setBackgroundDrawable(config.newBackground(res));
+
+    mAnimationSpeed = config.getAnimationSpeed();
+    mAnimationDelay = config.getAnimationDelay();
+    mAnimationRevolutionsPerSecond = config.getAnimationRevolutionsPerSecond();
+    mProgressDrawable.setStripWidth(config.getAnimationStripWidth());
+    mProgressDrawable.setStaticLayerCacheEnabled(config.isStaticLayerCacheEnabled());
+    mProgressDrawable.setArcPathResolution(config.getArcPathResolution());
+    mAutomaticHardwareLayer = config.isAutomaticHardwareLayerEnabled();
+    mProgressAnimationDuration = config.getProgressAnimationDuration();
+    // A content description set in XML is the app's own, and isn't replaced by the defaults.
+    mAutomaticContentDescription =
+        config.isAutomaticContentDescriptionEnabled() && getContentDescription() == null;
+    for (int i = 0; i < STATE_CONTENT_DESCRIPTION_COUNT; i++) {
+      mStateContentDescriptions[i] = config.getStateContentDescription(i);
+    }
 
-    mProgressPaint = new Paint();
-    mProgressPaint.setColor(progressColor);
-    mProgressPaint.setAntiAlias(true);
+    mProgressDrawable.setPinned(isChecked());
+    mProgressDrawable.setState(getDrawableState());
+    mProgressDrawable.setSweepAngle(computeSweepAngle());
+    updatePostThreshold();
+    // The pinned state was set before the descriptions were read.
+    mContentDescriptionIndex = -1;
+    updateContentDescription();
 
-    if (mAnimating) {
+    if (config.isAnimating()) {
       startAnimating();
     }
   }
 
-  /** Returns the maximum progress value. */
+  /**
+   * Returns the maximum progress value, or {@link Integer#MAX_VALUE} if it doesn't fit in an int.
+   *
+   * @see #getMaxLong()
+   */
   public int getMax() {
+    return (int) Math.min(mMax, Integer.MAX_VALUE);
+  }
+
+  /** Returns the maximum progress value. */
+  public long getMaxLong() {
     return mMax;
   }
 
   /** Sets the maximum progress value. Defaults to 100. */
   public void setMax(int max) {
+    setMax((long) max);
+  }
+
+  /**
+   * Sets the maximum progress value, for example the size of a download in bytes. Defaults to
+   * 100.
+   */
+  public void setMax(long max) {
     if (max <= 0 || max < mProgress) {
-      throw new IllegalArgumentException(
-          String.format("Max (%d) must be > 0 and >= %d", max, mProgress));
+      throwInvalidMax(max, mProgress);
     }
+    removeSegments();
     mMax = max;
-    invalidate();
+    updateSweepAngle();
+    updateContentDescription();
   }
 
-  /** Returns the current progress from 0 to max. */
+  /**
+   * Returns the current progress from 0 to max, or {@link Integer#MAX_VALUE} if it doesn't fit in
+   * an int.
+   *
+   * @see #getProgressLong()
+   */
   public int getProgress() {
+    return (int) Math.min(mProgress, Integer.MAX_VALUE);
+  }
+
+  /** Returns the current progress from 0 to max. */
+  public long getProgressLong() {
     return mProgress;
   }
 
+  /** Returns the current progress as a fraction of the max, from 0 to 1. */
+  public float getProgressFraction() {
+    return (float) ((double) mProgress / mMax);
+  }
+
   /**
    * Sets the current progress (must be between 0 and max).
    *
    * @see #setMax(int)
    */
   public void setProgress(int progress) {
-    if (progress > mMax || progress < 0) {
-      throw new IllegalArgumentException(
-          String.format("Progress (%d) must be between %d and %d", progress, 0, mMax));
-    }
+    setProgress(progress, false);
+  }
+
+  /**
+   * Sets the current progress (must be between 0 and max). If animate is true, the progress arc
+   * is tweened from where it is currently drawn to the new progress over the progress animation
+   * duration, redrawing once per frame. Setting the progress again while tweening retargets the
+   * tween from where the arc is currently drawn.
+   *
+   * @see #setProgressAnimationDuration(int)
+   */
+  public void setProgress(int progress, boolean animate) {
+    setProgress((long) progress, animate);
+  }
+
+  /**
+   * Sets the current progress (must be between 0 and max), for example the number of bytes
+   * downloaded so far.
+   *
+   * @see #setMax(long)
+   */
+  public void setProgress(long progress) {
+    setProgress(progress, false);
+  }
+
+  /**
+   * Sets the current progress (must be between 0 and max), optionally tweening the progress arc
+   * towards it.
+   *
+   * @see #setProgress(int, boolean)
+   */
+  public void setProgress(long progress, boolean animate) {
+    checkProgressAndMax(progress, mMax);
+    clearPendingProgress();
+    removeSegments();
     mProgress = progress;
-    invalidate();
+    if (animate) {
+      // The arc catches up over the tween, everything else sees the new progress right away.
+      publishProgress();
+      startTween();
+    } else {
+      stopTween();
+      updateSweepAngle();
+    }
+    updateContentDescription();
   }
 
   /**
@@ -224,81 +493,593 @@ public class ProgressButton extends CompoundButton {
    * @see #setProgress(int)
    */
   public void setProgressAndMax(int progress, int max) {
-    if (progress > max || progress < 0) {
+    setProgressAndMax((long) progress, (long) max);
+  }
+
+  /**
+   * Sets the current progress and maximum progress value, both of which must be valid values.
+   * Byte counts of any size can be passed as they are, the sweep of the progress arc is computed
+   * without overflowing.
+   *
+   * @see #setProgressAndMax(int, int)
+   */
+  public void setProgressAndMax(long progress, long max) {
+    checkProgressAndMax(progress, max);
+    clearPendingProgress();
+    removeSegments();
+    mProgress = progress;
+    mMax = max;
+    stopTween();
+    updateSweepAngle();
+    updateContentDescription();
+  }
+
+  /**
+   * Sets the current progress as a fraction of the max, from 0 to 1. The progress is rounded to
+   * the nearest whole value.
+   */
+  public void setProgressFraction(float fraction) {
+    checkFraction(fraction);
+    setProgress(Math.round((double) fraction * mMax));
+  }
+
+  /**
+   * Sets the progress, max and pinned state at once, and redraws at most once for all of them.
+   * Used by {@link ProgressButtonGroup} to apply a batch of updates.
+   *
+   * @return true if the progress, max or pinned state changed
+   */
+  boolean applyUpdate(long progress, long max, boolean pinned) {
+    checkProgressAndMax(progress, max);
+    final boolean changed = progress != mProgress || max != mMax || pinned != isChecked();
+    clearPendingProgress();
+    // A bound state holds the sum of the segments, which doesn't replace them.
+    if (progress != mProgress || max != mMax) {
+      removeSegments();
+    }
+    mProgress = progress;
+    mMax = max;
+    mDeferInvalidate = true;
+    try {
+      stopTween();
+      setChecked(pinned);
+      updateSweepAngle();
+      updateContentDescription();
+    } finally {
+      mDeferInvalidate = false;
+    }
+    if (mDrawableInvalidated) {
+      invalidate();
+    } else if (mInnerCircleInvalidated) {
+      invalidate(mProgressDrawable.getInnerBounds());
+    }
+    mDrawableInvalidated = false;
+    mInnerCircleInvalidated = false;
+    return changed;
+  }
+
+  /** Returns the duration of progress tweens, in milliseconds. */
+  public int getProgressAnimationDuration() {
+    return mProgressAnimationDuration;
+  }
+
+  /**
+   * Sets the duration of progress tweens, in milliseconds. Defaults to 200.
+   *
+   * @see #setProgress(int, boolean)
+   */
+  public void setProgressAnimationDuration(int duration) {
+    if (duration < 0) {
+      throw new IllegalArgumentException(String.format("Duration (%d) must be >= 0", duration));
+    }
+    mProgressAnimationDuration = duration;
+  }
+
+  /** Returns true if the progress arc is being tweened towards the progress. */
+  public boolean isAnimatingProgress() {
+    return mTweening;
+  }
+
+  /** Start tweening the progress arc from where it is currently drawn towards the progress. */
+  private void startTween() {
+    final float sweepAngle = mProgressDrawable.getSweepAngle();
+    if (sweepAngle == computeSweepAngle()) {
+      stopTween();
+      return;
+    }
+    mTweenStartAngle = sweepAngle;
+    mTweenStartTimeNanos = 0;
+    if (!mTweening) {
+      mTweening = true;
+      interruptMetricsTicks();
+      AnimationClock.getInstance().addCallback(mTweenCallback);
+      updateHardwareLayer();
+    }
+  }
+
+  void doTweenFrame(long frameTimeNanos) {
+    if (mMetrics != null) {
+      mMetrics.recordTick(frameTimeNanos);
+    }
+    if (mTweenStartTimeNanos == 0) {
+      mTweenStartTimeNanos = frameTimeNanos;
+    }
+    final float fraction = (frameTimeNanos - mTweenStartTimeNanos)
+        / (Math.max(mProgressAnimationDuration, 1) * 1000000f);
+    final float targetAngle = computeSweepAngle();
+    if (fraction >= 1) {
+      mProgressDrawable.setSweepAngle(targetAngle);
+      stopTween();
+    } else {
+      // Decelerate towards the target.
+      final float interpolated = 1 - (1 - fraction) * (1 - fraction);
+      mProgressDrawable.setSweepAngle(
+          mTweenStartAngle + (targetAngle - mTweenStartAngle) * interpolated);
+    }
+  }
+
+  /** Stop tweening, leaving the progress arc where it is currently drawn. */
+  private void stopTween() {
+    if (mTweening) {
+      mTweening = false;
+      AnimationClock.getInstance().removeCallback(mTweenCallback);
+      updateHardwareLayer();
+    }
+  }
+
+  /**
+   * Posts the current progress from any thread. The progress is applied on the next frame, and
+   * only the latest value posted before that frame is applied, so any number of intermediate
+   * updates cost a single redraw. Progress above the max at the time it is applied is clamped to
+   * the max.
+   *
+   * @see #setProgress(int)
+   */
+  public void postProgress(int progress) {
+    postProgress((long) progress);
+  }
+
+  /**
+   * Posts the current progress from any thread.
+   *
+   * @see #postProgress(int)
+   */
+  public void postProgress(long progress) {
+    if (progress < 0) {
       throw new IllegalArgumentException(
-          String.format("Progress (%d) must be between %d and %d", progress, 0, max));
-    } else if (max <= 0) {
-      throw new IllegalArgumentException(String.format("Max (%d) must be > 0", max));
+          String.format("Progress (%d) must be >= %d", progress, 0));
+    }
+    if (isInvisibleChange(progress, mThresholdMax)) {
+      return;
     }
+    mLastPostedProgress = progress;
+    postPendingProgress(progress);
+  }
+
+  /**
+   * Posts the current progress and maximum progress value from any thread, both of which must be
+   * valid values. The values are applied on the next frame, and only the latest values posted
+   * before that frame are applied.
+   *
+   * @see #postProgress(int)
+   * @see #setProgressAndMax(int, int)
+   */
+  public void postProgressAndMax(int progress, int max) {
+    postProgressAndMax((long) progress, (long) max);
+  }
 
+  /**
+   * Posts the current progress and maximum progress value from any thread.
+   *
+   * @see #postProgressAndMax(int, int)
+   */
+  public void postProgressAndMax(long progress, long max) {
+    checkProgressAndMax(progress, max);
+    if (isInvisibleChange(progress, max)) {
+      return;
+    }
+    mLastPostedProgress = progress;
+    // The max is published first, so whoever sees the progress also sees its max.
+    mPendingMax.set(max);
+    postPendingProgress(progress);
+  }
+
+  private void postPendingProgress(long progress) {
+    // Only the first value posted since the last apply needs to schedule one.
+    if (mPendingProgress.getAndSet(progress) == NO_PENDING_PROGRESS) {
+      MAIN_THREAD_HANDLER.post(mPendingProgressCallback);
+    }
+  }
+
+  /**
+   * Returns true if posting the given progress wouldn't visibly change the progress arc, so it can
+   * be dropped without handing it over to the main thread. Leaving the empty arc, reaching the
+   * full arc and changing the max are never dropped.
+   */
+  private boolean isInvisibleChange(long progress, long max) {
+    final long lastProgress = mLastPostedProgress;
+    return lastProgress > 0
+        && progress > 0
+        && progress < max
+        && max == mThresholdMax
+        && Math.abs(progress - lastProgress) < mMinimumVisibleProgressDelta;
+  }
+
+  /** Publish the current max, progress and visible progress delta to posting threads. */
+  private void updatePostThreshold() {
+    mThresholdMax = mMax;
+    mLastPostedProgress = mProgress;
+    mMinimumVisibleProgressDelta = getMinimumVisibleProgressDelta();
+  }
+
+  /**
+   * Returns the smallest change of progress that visibly changes the progress arc, for the current
+   * max, inner size, screen density and arc path resolution. Producers of progress, like a
+   * download loop, can skip updates smaller than this at the source. Posted progress that is
+   * closer than this to the last posted progress is dropped, except for the first progress and
+   * the final progress.
+   *
+   * @see ProgressDrawable#getMinimumVisibleSweepDelta()
+   */
+  public long getMinimumVisibleProgressDelta() {
+    final double delta = mMax * (double) mProgressDrawable.getMinimumVisibleSweepDelta() / 360;
+    return Math.max(1, (long) Math.ceil(delta));
+  }
+
+  /** Drop any posted progress, which has been superseded. */
+  private void clearPendingProgress() {
+    mPendingProgress.set(NO_PENDING_PROGRESS);
+    mPendingMax.set(NO_PENDING_MAX);
+  }
+
+  void applyPendingProgress() {
+    applySegmentProgress();
+    final long progress = mPendingProgress.getAndSet(NO_PENDING_PROGRESS);
+    if (progress == NO_PENDING_PROGRESS) {
+      return;
+    }
+    removeSegments();
+    // A max posted after this progress is applied with it, and the progress is clamped to it.
+    final long max = mPendingMax.getAndSet(NO_PENDING_MAX);
+    if (max != NO_PENDING_MAX) {
+      mMax = max;
+    }
+    mProgress = Math.min(progress, mMax);
+    updateSweepAngle();
+    updateContentDescription();
+  }
+
+  /**
+   * Split the progress into segments of the given sizes, for example the byte ranges of a file that
+   * is downloaded in parallel, each of which is drawn as its own arc. The max becomes the sum of
+   * the sizes and the progress the sum of the progress of every segment, which starts at 0.
+   * <p/>
+   * Progress of each segment is posted from any thread with
+   * {@link #postSegmentProgress(int, long)}. Setting or posting the progress or max of the button
+   * directly stops splitting it into segments.
+   */
+  public void setSegments(long... sizes) {
+    if (sizes.length == 0) {
+      throw new IllegalArgumentException("At least one segment is required");
+    }
+    long total = 0;
+    for (long size : sizes) {
+      if (size <= 0) {
+        throw new IllegalArgumentException(String.format("Size (%d) must be > 0", size));
+      }
+      total += size;
+      if (total < 0) {
+        throw new IllegalArgumentException(
+            String.format("Total size must be <= %d", Long.MAX_VALUE));
+      }
+    }
+    clearPendingProgress();
+    stopTween();
+    final Segments segments = new Segments(sizes.clone());
+    mSegments = segments;
+    mProgress = 0;
+    mMax = segments.mTotal;
+    mProgressDrawable.setSegmentCount(sizes.length);
+    updateSegmentAngles(segments);
+    updateSweepAngle();
+    updateContentDescription();
+  }
+
+  /** Returns the number of segments the progress is split into, or 0 if it isn't split. */
+  public int getSegmentCount() {
+    final Segments segments = mSegments;
+    return segments == null ? 0 : segments.mSizes.length;
+  }
+
+  /** Returns the size of the given segment. */
+  public long getSegmentSize(int segment) {
+    return checkSegment(mSegments, segment).mSizes[segment];
+  }
+
+  /** Returns the latest progress posted for the given segment, from any thread. */
+  public long getSegmentProgress(int segment) {
+    return checkSegment(mSegments, segment).getProgress(segment);
+  }
+
+  /**
+   * Posts the progress of the given segment (must be between 0 and the size of the segment) from
+   * any thread. Every segment is written without locks or contention with the others, so each
+   * worker of a parallel download can post the progress of its own segment directly. The progress
+   * of all segments is applied together on the next frame, redrawing the button once.
+   */
+  public void postSegmentProgress(int segment, long progress) {
+    final Segments segments = checkSegment(mSegments, segment);
+    if (progress < 0 || progress > segments.mSizes[segment]) {
+      throwInvalidProgress(progress, segments.mSizes[segment]);
+    }
+    segments.setProgress(segment, progress);
+    // Only the first post since the last apply needs to schedule one, the others only read.
+    if (!mSegmentProgressPending.get() && mSegmentProgressPending.compareAndSet(false, true)) {
+      MAIN_THREAD_HANDLER.post(mPendingProgressCallback);
+    }
+  }
+
+  /** Stop splitting the progress into segments, keeping the current progress and max. */
+  public void clearSegments() {
+    removeSegments();
+  }
+
+  private void removeSegments() {
+    if (mSegments != null) {
+      mSegments = null;
+      mProgressDrawable.setSegmentCount(0);
+    }
+  }
+
+  private static Segments checkSegment(Segments segments, int segment) {
+    final int count = segments == null ? 0 : segments.mSizes.length;
+    if (segment < 0 || segment >= count) {
+      throw new IllegalArgumentException(
+          String.format("Segment (%d) must be between %d and %d", segment, 0, count - 1));
+    }
+    return segments;
+  }
+
+  /** Apply the latest posted progress of every segment, and their sum as the progress. */
+  private void applySegmentProgress() {
+    // Cleared before reading, so a segment posted while reading schedules another apply.
+    if (!mSegmentProgressPending.getAndSet(false)) {
+      return;
+    }
+    final Segments segments = mSegments;
+    if (segments == null) {
+      return;
+    }
+    long progress = 0;
+    for (int i = 0; i < segments.mSizes.length; i++) {
+      progress += segments.getProgress(i);
+    }
     mProgress = progress;
-    mMax = max;
-    invalidate();
+    updateSegmentAngles(segments);
+    updateSweepAngle();
+    updateContentDescription();
+  }
+
+  private void updateSegmentAngles(Segments segments) {
+    final double degreesPerUnit = 360.0 / segments.mTotal;
+    for (int i = 0; i < segments.mSizes.length; i++) {
+      mProgressDrawable.setSegment(i, (float) (segments.mOffsets[i] * degreesPerUnit),
+          (float) (segments.getProgress(i) * degreesPerUnit));
+    }
+  }
+
+  /**
+   * Validate a progress and max. The error messages are built out of line, so the update methods
+   * don't box or format anything unless they throw.
+   */
+  static void checkProgressAndMax(long progress, long max) {
+    if (progress > max || progress < 0) {
+      throwInvalidProgress(progress, max);
+    } else if (max <= 0) {
+      throwInvalidMax(max, 0);
+    }
+  }
+
+  private static void checkFraction(float fraction) {
+    if (!(fraction >= 0 && fraction <= 1)) {
+      throw new IllegalArgumentException(
+          String.format("Fraction (%f) must be between %d and %d", fraction, 0, 1));
+    }
+  }
+
+  private static void throwInvalidProgress(long progress, long max) {
+    throw new IllegalArgumentException(
+        String.format("Progress (%d) must be between %d and %d", progress, 0, max));
+  }
+
+  private static void throwInvalidMax(long max, long progress) {
+    throw new IllegalArgumentException(
+        String.format("Max (%d) must be > 0 and >= %d", max, progress));
   }
 
   /** Get the color used to display the progress level. */
   public int getProgressColor() {
-    return mProgressPaint.getColor();
+    return mProgressDrawable.getProgressColor();
   }
 
   /** Sets the color used to display the progress level. */
   public void setProgressColor(int progressColor) {
-    mProgressPaint.setColor(progressColor);
-    invalidate();
+    mChangedProperties |= SAVED_PROGRESS_COLOR;
+    mProgressDrawable.setProgressColor(progressColor);
   }
 
   /** Get the color used to display the progress background. */
   public int getCircleColor() {
-    return mCirclePaint.getColor();
+    return mProgressDrawable.getCircleColor();
   }
 
   /** Sets the color used to display the progress background. */
   public void setCircleColor(int circleColor) {
-    mCirclePaint.setColor(circleColor);
-    invalidate();
+    mChangedProperties |= SAVED_CIRCLE_COLOR;
+    mProgressDrawable.setCircleColor(circleColor);
   }
 
   /** Get the drawable that is displayed when the item is pinned. */
   public Drawable getPinnedDrawable() {
-    return mPinnedDrawable;
+    return mProgressDrawable.getPinnedDrawable();
   }
 
   /** Set the drawable that is displayed when the item is pinned. */
   public void setPinnedDrawable(Drawable pinnedDrawable) {
-    mPinnedDrawable = pinnedDrawable;
-    invalidate();
+    mProgressDrawable.setPinnedDrawable(pinnedDrawable);
   }
 
   /** Get the drawable that is displayed when the item is unpinned. */
   public Drawable getUnpinnedDrawable() {
-    return mUnpinnedDrawable;
+    return mProgressDrawable.getUnpinnedDrawable();
   }
 
   /** Set the drawable that is displayed when the item is unpinned. */
   public void setUnpinnedDrawable(Drawable unpinnedDrawable) {
-    mUnpinnedDrawable = unpinnedDrawable;
-    invalidate();
+    mProgressDrawable.setUnpinnedDrawable(unpinnedDrawable);
   }
 
   /** Get the drawable that is displayed as the shadow. */
   public Drawable getShadowDrawable() {
-    return mShadowDrawable;
+    return mProgressDrawable.getShadowDrawable();
   }
 
-  /** Set the drawable that is displayed as the shadow. */
+  /**
+   * Set the drawable that is displayed as the shadow, whose intrinsic size is the size of the
+   * button. Requests a layout if the size changes.
+   */
   public void setShadowDrawable(Drawable shadowDrawable) {
-    mShadowDrawable = shadowDrawable;
-    mDrawableSize = mShadowDrawable.getIntrinsicWidth();
-    invalidate();
+    final int size = mProgressDrawable.getIntrinsicWidth();
+    mProgressDrawable.setShadowDrawable(shadowDrawable);
+    if (mProgressDrawable.getIntrinsicWidth() != size) {
+      requestLayout();
+    }
+  }
+
+  /** Returns true if the icon and shadow are drawn from a shared bitmap. */
+  public boolean isStaticLayerCacheEnabled() {
+    return mProgressDrawable.isStaticLayerCacheEnabled();
+  }
+
+  /**
+   * Set whether the icon and shadow are drawn from a bitmap. The bitmap is rendered once for each
+   * size, pinned state and drawable state, and shared by every button with the same drawables, so
+   * each frame only draws the progress arcs and the bitmap. Drawables without a constant state are
+   * always drawn directly.
+   */
+  public void setStaticLayerCacheEnabled(boolean enabled) {
+    mProgressDrawable.setStaticLayerCacheEnabled(enabled);
+  }
+
+  /**
+   * Returns the number of steps per revolution the arcs are quantized to, or 0 if exact arcs are
+   * drawn.
+   */
+  public int getArcPathResolution() {
+    return mProgressDrawable.getArcPathResolution();
+  }
+
+  /**
+   * Set the number of steps per revolution the arcs are quantized to, or 0 to draw exact arcs.
+   * Quantized arcs are drawn from paths that are built once and shared by every button with the
+   * same inner size and resolution, so drawing a button doesn't tessellate any wedges. For example
+   * a resolution of 360 rounds the arcs to whole degrees. Defaults to 0.
+   */
+  public void setArcPathResolution(int resolution) {
+    mProgressDrawable.setArcPathResolution(resolution);
+    updatePostThreshold();
   }
 
   public int getInnerSize() {
-    return mInnerSize;
+    return mProgressDrawable.getInnerSize();
   }
 
+  /**
+   * Set the size of the inner circle, in pixels. The circle is drawn centered within the button,
+   * so this only redraws it.
+   */
   public void setInnerSize(int innerSize) {
-    mInnerSize = innerSize;
-    invalidate();
+    mProgressDrawable.setInnerSize(innerSize);
+    updatePostThreshold();
+  }
+
+  /** Returns the drawable that renders this button. */
+  public ProgressDrawable getProgressDrawable() {
+    return mProgressDrawable;
+  }
+
+  /**
+   * Returns the download state for the current progress, one of
+   * {@link #DOWNLOAD_STATE_NOT_DOWNLOADED}, {@link #DOWNLOAD_STATE_DOWNLOADING} or
+   * {@link #DOWNLOAD_STATE_DOWNLOADED}.
+   */
+  public int getDownloadState() {
+    if (mProgress <= 0) {
+      return DOWNLOAD_STATE_NOT_DOWNLOADED;
+    } else if (mProgress >= mMax) {
+      return DOWNLOAD_STATE_DOWNLOADED;
+    }
+    return DOWNLOAD_STATE_DOWNLOADING;
+  }
+
+  /** Returns the content description used for the given pinned state and download state. */
+  public CharSequence getStateContentDescription(boolean pinned, int downloadState) {
+    return mStateContentDescriptions[getContentDescriptionIndex(pinned, downloadState)];
+  }
+
+  /**
+   * Set the content description used for the given pinned state and download state. Pass null to
+   * leave the content description untouched in that state.
+   *
+   * @see #setAutomaticContentDescriptionEnabled(boolean)
+   */
+  public void setStateContentDescription(boolean pinned, int downloadState,
+      CharSequence description) {
+    mStateContentDescriptions[getContentDescriptionIndex(pinned, downloadState)] = description;
+    mContentDescriptionIndex = -1;
+    updateContentDescription();
+  }
+
+  /** Returns true if the content description follows the pinned state and download state. */
+  public boolean isAutomaticContentDescriptionEnabled() {
+    return mAutomaticContentDescription;
+  }
+
+  /**
+   * Set whether the content description follows the pinned state and download state. The
+   * descriptions are resolved once, and the content description is only set when the pinned
+   * state or download state changes, not on every progress update. Defaults to true, unless a
+   * content description is set in XML.
+   *
+   * @see #setStateContentDescription(boolean, int, CharSequence)
+   */
+  public void setAutomaticContentDescriptionEnabled(boolean enabled) {
+    mAutomaticContentDescription = enabled;
+    mContentDescriptionIndex = -1;
+    updateContentDescription();
+  }
+
+  static int getContentDescriptionIndex(boolean pinned, int downloadState) {
+    if (downloadState < 0 || downloadState >= DOWNLOAD_STATE_COUNT) {
+      throw new IllegalArgumentException(
+          String.format("Download state (%d) must be between %d and %d", downloadState, 0,
+              DOWNLOAD_STATE_COUNT - 1));
+    }
+    return (pinned ? 0 : DOWNLOAD_STATE_COUNT) + downloadState;
+  }
+
+  /** Set the content description for the current state, if it has changed. */
+  private void updateContentDescription() {
+    if (!mAutomaticContentDescription) {
+      return;
+    }
+    final int index = getContentDescriptionIndex(isChecked(), getDownloadState());
+    if (index != mContentDescriptionIndex) {
+      mContentDescriptionIndex = index;
+      if (mStateContentDescriptions[index] != null) {
+        setContentDescription(mStateContentDescriptions[index]);
+      }
+    }
   }
 
   /**
@@ -318,6 +1099,15 @@ public class ProgressButton extends CompoundButton {
     invalidate();
   }
 
+  @Override public void setChecked(boolean checked) {
+    // Written back first, so checked change listeners see the state of the button. Called from
+    // the super constructor before any state can be bound.
+    if (mState != null) {
+      mState.updatePinned(checked);
+    }
+    super.setChecked(checked);
+  }
+
   /** Returns true if the button is animating. */
   public boolean isAnimating() {
     return mAnimating;
@@ -335,82 +1125,463 @@ public class ProgressButton extends CompoundButton {
 
   /** Get the width of the animation strip. */
   public int getAnimationStripWidth() {
-    return mAnimationStripWidth;
+    return mProgressDrawable.getStripWidth();
   }
 
-  /** Set the animation speed. This speed controls what progress we jump by in the animation. */
+  /**
+   * Set the animation speed. This speed controls what progress we jump by in the animation, and
+   * together with the animation delay determines the revolutions per second of the strip.
+   *
+   * @see #setAnimationRevolutionsPerSecond(float)
+   */
   public void setAnimationSpeed(int animationSpeed) {
+    mChangedProperties |= SAVED_ANIMATION_SETTINGS;
     mAnimationSpeed = animationSpeed;
   }
 
-  /** Set the delay of the animation. This controls the duration between each frame. */
+  /**
+   * Set the delay of the animation. Together with the animation speed, this determines the
+   * revolutions per second of the strip.
+   *
+   * @see #setAnimationRevolutionsPerSecond(float)
+   */
   public void setAnimationDelay(int animationDelay) {
+    mChangedProperties |= SAVED_ANIMATION_SETTINGS;
     mAnimationDelay = animationDelay;
   }
 
   /** Set the width of the animation strip. */
   public void setAnimationStripWidth(int animationStripWidth) {
-    mAnimationStripWidth = animationStripWidth;
+    mChangedProperties |= SAVED_ANIMATION_SETTINGS;
+    mProgressDrawable.setStripWidth(animationStripWidth);
+  }
+
+  /**
+   * Get the number of revolutions the animation strip makes per second. Unless set explicitly,
+   * this is derived from the animation speed and delay, with the speed measured against a max of
+   * 100 whatever the max of the button is.
+   *
+   * @see #setAnimationRevolutionsPerSecond(float)
+   */
+  public float getAnimationRevolutionsPerSecond() {
+    if (mAnimationRevolutionsPerSecond > 0) {
+      return mAnimationRevolutionsPerSecond;
+    }
+    // The strip used to move by speed progress units every delay milliseconds. Units of the
+    // default max are used, as the max can be any byte count and would stall the strip.
+    return mAnimationSpeed * 1000f
+        / (Math.max(mAnimationDelay, 1) * ProgressButtonConfig.DEFAULT_MAX);
+  }
+
+  /**
+   * Set the number of revolutions the animation strip makes per second. The position of the strip
+   * is computed from the time elapsed since {@link #startAnimating()}, so frames that are drawn
+   * late skip ahead instead of slowing the animation down. Pass 0 to derive the speed from the
+   * animation speed and delay again.
+   */
+  public void setAnimationRevolutionsPerSecond(float revolutionsPerSecond) {
+    if (revolutionsPerSecond < 0) {
+      throw new IllegalArgumentException(
+          String.format("Revolutions per second (%f) must be >= 0", revolutionsPerSecond));
+    }
+    mChangedProperties |= SAVED_ANIMATION_SETTINGS;
+    mAnimationRevolutionsPerSecond = revolutionsPerSecond;
+  }
+
+  /**
+   * Returns the angle of the animation strip after it has been animating for the given time. The
+   * strip sweeps from the end of the progress arc to the top of the circle, and then starts over.
+   */
+  private float computeAnimationAngle(long elapsedNanos) {
+    final float startAngle = mProgressDrawable.getSweepAngle();
+    final float span = 360f - startAngle;
+    if (span <= 0) {
+      return startAngle;
+    }
+    final double degrees = elapsedNanos / 1e9 * getAnimationRevolutionsPerSecond() * 360;
+    return startAngle + (float) (degrees % span);
+  }
+
+  void doAnimationFrame(long frameTimeNanos) {
+    if (!mAnimating) {
+      return;
+    }
+    if (mMetrics != null) {
+      mMetrics.recordTick(frameTimeNanos);
+    }
+    if (mAnimationStartTimeNanos == 0) {
+      mAnimationStartTimeNanos = frameTimeNanos - mAnimationElapsedNanos;
+    }
+    mAnimationElapsedNanos = frameTimeNanos - mAnimationStartTimeNanos;
+    final float angle = computeAnimationAngle(mAnimationElapsedNanos);
+    if (angle != mProgressDrawable.getStripAngle()) {
+      mProgressDrawable.setStripAngle(angle);
+      // A button that isn't drawn after being invalidated for a while is out of sight.
+      if (++mUndrawnFrames > MAX_UNDRAWN_FRAMES) {
+        updateAnimationClock();
+      }
+    }
   }
 
   /** Start animating the button. */
   public void startAnimating() {
     if (!mAnimating) {
       mAnimating = true;
-      mAnimationProgress = mProgress;
-      mAnimationHandler.sendEmptyMessage(0);
+      mAnimationStartTimeNanos = 0;
+      mAnimationElapsedNanos = 0;
+      mProgressDrawable.setStripAngle(mProgressDrawable.getSweepAngle());
+      mProgressDrawable.setStripVisible(true);
+      mUndrawnFrames = 0;
+      mAnimationPaused = true;
+      updateAnimationClock();
+      if (mState != null) {
+        mState.updateAnimating(true);
+      }
     }
   }
 
   /** Stop animating the button. */
   public void stopAnimating() {
     mAnimating = false;
-    mAnimationProgress = mProgress;
-    mAnimationHandler.removeMessages(0);
-    invalidate();
+    mAnimationPaused = false;
+    mProgressDrawable.setStripVisible(false);
+    AnimationClock.getInstance().removeCallback(mAnimationCallback);
+    updateHardwareLayer();
+    if (mState != null) {
+      mState.updateAnimating(false);
+    }
+  }
+
+  /** Returns true if the button is animating, but paused because it can't be seen. */
+  public boolean isAnimationPaused() {
+    return mAnimationPaused;
+  }
+
+  /**
+   * Pause the animation while the button can't be seen, and resume it when it can. A button can't
+   * be seen while it or its window is hidden, while it is detached, and when it hasn't been drawn
+   * for a while after invalidating, like when it is scrolled out of view.
+   */
+  private void updateAnimationClock() {
+    if (!mAnimating) {
+      return;
+    }
+    final boolean visible = !mDetached
+        && !mTemporarilyDetached
+        && !mHidden
+        && !mWindowHidden
+        && mUndrawnFrames <= MAX_UNDRAWN_FRAMES;
+    if (visible && mAnimationPaused) {
+      mAnimationPaused = false;
+      interruptMetricsTicks();
+      AnimationClock.getInstance().addCallback(mAnimationCallback);
+      updateHardwareLayer();
+    } else if (!visible && !mAnimationPaused) {
+      mAnimationPaused = true;
+      AnimationClock.getInstance().removeCallback(mAnimationCallback);
+      updateHardwareLayer();
+      if (mUndrawnFrames > MAX_UNDRAWN_FRAMES) {
+        // Make sure the button is redrawn, and resumes, once it is back in view.
+        invalidate();
+      }
+    }
+  }
+
+  /**
+   * Display the given state, or stop displaying a state if null. The progress, max, pinned and
+   * animating state are applied in a single pass that redraws at most once, and from then on the
+   * button follows changes to the state while it is attached to a window, picking up anything
+   * that changed while it was detached when it is attached again. Changes made through the button
+   * are written back to the state whether or not it is attached, so progress posted to a button
+   * that was scrolled out of view isn't lost. Each change only writes back what it changed, and
+   * leaves whatever the state was changed to in the meantime as it is.
+   * <p/>
+   * A state is displayed by one button at a time, binding it to another button unbinds it from
+   * this one.
+   */
+  public void bind(ProgressState state) {
+    if (mState != null && mState.getButton() == this) {
+      mState.setButton(null);
+    }
+    mState = state;
+    if (state != null) {
+      final ProgressButton previous = state.getButton();
+      if (previous != null && previous != this) {
+        previous.mState = null;
+      }
+      state.setButton(this);
+      if (!mDetached) {
+        applyState();
+      }
+    }
+  }
+
+  /** Returns the state displayed by this button, or null if none is bound. */
+  public ProgressState getBoundState() {
+    return mState;
+  }
+
+  /** Returns true if changes to the bound state should be applied to this button right away. */
+  boolean isFollowingState() {
+    return !mDetached;
+  }
+
+  /** Apply the bound state to the button in one pass. */
+  private void applyState() {
+    // Read everything first, as applying writes the button's own values back to the state.
+    final long progress = mState.getProgress();
+    final long max = mState.getMax();
+    final boolean pinned = mState.isPinned();
+    final boolean animating = mState.isAnimating();
+    applyUpdate(progress, max, pinned);
+    if (animating) {
+      startAnimating();
+    } else if (mAnimating) {
+      stopAnimating();
+    }
+  }
+
+  @Override protected void onAttachedToWindow() {
+    super.onAttachedToWindow();
+    mDetached = false;
+    if (mState != null) {
+      applyState();
+    }
+    updateAnimationClock();
+  }
+
+  @Override protected void onDetachedFromWindow() {
+    super.onDetachedFromWindow();
+    // Nothing is left scheduled for a detached button, posted progress is applied right away and
+    // a tween jumps to its end. Both are flushed while still attached, so the bound state sees
+    // them like any other update.
+    MAIN_THREAD_HANDLER.removeCallbacks(mPendingProgressCallback);
+    AnimationClock.getInstance().removeCallback(mPendingProgressCallback);
+    applyPendingProgress();
+    if (mTweening) {
+      stopTween();
+      updateSweepAngle();
+    }
+    mDetached = true;
+    updateAnimationClock();
+  }
+
+  @Override public void onStartTemporaryDetach() {
+    super.onStartTemporaryDetach();
+    mTemporarilyDetached = true;
+    updateAnimationClock();
+  }
+
+  @Override public void onFinishTemporaryDetach() {
+    super.onFinishTemporaryDetach();
+    mTemporarilyDetached = false;
+    updateAnimationClock();
+  }
+
+  @Override protected void onVisibilityChanged(View changedView, int visibility) {
+    super.onVisibilityChanged(changedView, visibility);
+    // The ancestors of a button that isn't attached are unknown, so only its own visibility counts.
+    mHidden = getWindowToken() != null ? !isShown() : getVisibility() != VISIBLE;
+    updateAnimationClock();
+  }
+
+  @Override protected void onWindowVisibilityChanged(int visibility) {
+    super.onWindowVisibilityChanged(visibility);
+    mWindowHidden = visibility != VISIBLE;
+    updateAnimationClock();
+  }
+
+  /** Returns true if a hardware layer is used while the button animates. */
+  public boolean isAutomaticHardwareLayerEnabled() {
+    return mAutomaticHardwareLayer;
+  }
+
+  /**
+   * Set whether the button switches to a hardware layer while the strip or a progress tween is
+   * animating, and back to no layer once it is idle. This lets the button be redrawn every frame
+   * without recomposing the parent, without holding on to layer memory for idle buttons. A layer
+   * type set by the app is left untouched. Has no effect before Honeycomb.
+   *
+   * @see android.view.View#setLayerType(int, Paint)
+   */
+  public void setAutomaticHardwareLayerEnabled(boolean enabled) {
+    mAutomaticHardwareLayer = enabled;
+    updateHardwareLayer();
+  }
+
+  /** Add or remove the automatic hardware layer depending on whether anything is animating. */
+  private void updateHardwareLayer() {
+    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+      return;
+    }
+    final boolean wantsLayer =
+        mAutomaticHardwareLayer && ((mAnimating && !mAnimationPaused) || mTweening);
+    if (wantsLayer && !mHardwareLayerActive && getLayerType() == LAYER_TYPE_NONE) {
+      setLayerType(LAYER_TYPE_HARDWARE, null);
+      mHardwareLayerActive = true;
+    } else if (!wantsLayer && mHardwareLayerActive) {
+      mHardwareLayerActive = false;
+      if (getLayerType() == LAYER_TYPE_HARDWARE) {
+        setLayerType(LAYER_TYPE_NONE, null);
+      }
+    }
   }
 
   @Override protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
-    setMeasuredDimension(resolveSize(mDrawableSize, widthMeasureSpec),
-        resolveSize(mDrawableSize, heightMeasureSpec));
+    final int drawableSize = mProgressDrawable.getIntrinsicWidth();
+    if (drawableSize != mMeasuredDrawableSize
+        || widthMeasureSpec != mMeasuredWidthSpec
+        || heightMeasureSpec != mMeasuredHeightSpec) {
+      mMeasuredDrawableSize = drawableSize;
+      mMeasuredWidthSpec = widthMeasureSpec;
+      mMeasuredHeightSpec = heightMeasureSpec;
+      mCachedMeasuredWidth = resolveSize(drawableSize, widthMeasureSpec);
+      mCachedMeasuredHeight = resolveSize(drawableSize, heightMeasureSpec);
+    }
+    setMeasuredDimension(mCachedMeasuredWidth, mCachedMeasuredHeight);
   }
 
-  @Override protected void drawableStateChanged() {
-    super.drawableStateChanged();
-    if (mPinnedDrawable.isStateful()) {
-      mPinnedDrawable.setState(getDrawableState());
+  @Override protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+    super.onSizeChanged(w, h, oldw, oldh);
+    mProgressDrawable.setBounds(0, 0, w, h);
+  }
+
+  /** Returns true if rendering metrics are collected for this button. */
+  public boolean isMetricsEnabled() {
+    return mMetrics != null;
+  }
+
+  /**
+   * Set whether rendering metrics are collected for this button, which are also added to the
+   * {@link #getGlobalMetrics() global metrics}. Disabled by default. Disabling discards the
+   * metrics of this button.
+   */
+  public void setMetricsEnabled(boolean enabled) {
+    if (enabled && mMetrics == null) {
+      mMetrics = new ProgressButtonMetrics(GLOBAL_METRICS);
+    } else if (!enabled) {
+      mMetrics = null;
     }
-    if (mUnpinnedDrawable.isStateful()) {
-      mUnpinnedDrawable.setState(getDrawableState());
+  }
+
+  /** Returns a snapshot of the metrics of this button, or null if they aren't collected. */
+  public ProgressButtonMetrics getMetrics() {
+    return mMetrics == null ? null : mMetrics.snapshot();
+  }
+
+  /** Reset the metrics of this button, without changing the global metrics. */
+  public void resetMetrics() {
+    if (mMetrics != null) {
+      mMetrics.reset();
     }
-    if (mShadowDrawable.isStateful()) {
-      mShadowDrawable.setState(getDrawableState());
+  }
+
+  /**
+   * Returns a snapshot of the metrics of every button in this process, while their metrics were
+   * enabled. Must be called from the main thread.
+   */
+  public static ProgressButtonMetrics getGlobalMetrics() {
+    return GLOBAL_METRICS.snapshot();
+  }
+
+  /** Reset the global metrics. Must be called from the main thread. */
+  public static void resetGlobalMetrics() {
+    GLOBAL_METRICS.reset();
+  }
+
+  private void interruptMetricsTicks() {
+    if (mMetrics != null) {
+      mMetrics.interruptTicks();
     }
   }
 
-  @Override protected void onDraw(Canvas canvas) {
-    super.onDraw(canvas);
+  /** Invalidate the inner circle of the drawable, unless invalidations are being deferred. */
+  void invalidateInnerCircle(Rect innerBounds) {
+    if (mMetrics != null) {
+      mMetrics.recordInvalidation();
+    }
+    if (mDeferInvalidate) {
+      mInnerCircleInvalidated = true;
+    } else {
+      invalidate(innerBounds);
+    }
+  }
 
-    mTempRect.set(0, 0, mDrawableSize, mDrawableSize);
-    mTempRect.offset((getWidth() - mDrawableSize) / 2, (getHeight() - mDrawableSize) / 2);
+  @Override public void invalidateDrawable(Drawable who) {
+    if (mMetrics != null && who == mProgressDrawable) {
+      mMetrics.recordInvalidation();
+    }
+    if (mDeferInvalidate && who == mProgressDrawable) {
+      mDrawableInvalidated = true;
+    } else {
+      super.invalidateDrawable(who);
+    }
+  }
 
-    mTempRectF.set(-0.5f, -0.5f, mInnerSize + 0.5f, mInnerSize + 0.5f);
-    mTempRectF.offset((getWidth() - mInnerSize) / 2, (getHeight() - mInnerSize) / 2);
+  @Override protected boolean verifyDrawable(Drawable who) {
+    return who == mProgressDrawable || super.verifyDrawable(who);
+  }
 
-    canvas.drawArc(mTempRectF, 0, 360, true, mCirclePaint);
-    canvas.drawArc(mTempRectF, -90, 360 * mProgress / mMax, true, mProgressPaint);
+  @Override protected void drawableStateChanged() {
+    super.drawableStateChanged();
+    // Called from the super constructor before the drawable is created.
+    if (mProgressDrawable != null) {
+      mProgressDrawable.setPinned(isChecked());
+      mProgressDrawable.setState(getDrawableState());
+      updateContentDescription();
+    }
+  }
 
-    if (mAnimating) {
-      canvas.drawArc(mTempRectF, -90 + (360 * mAnimationProgress / mMax), mAnimationStripWidth,
-          true, mProgressPaint);
+  /** Publish the current progress to posting threads and write it back to the bound state. */
+  private void publishProgress() {
+    updatePostThreshold();
+    if (mState != null) {
+      mState.updateProgress(mProgress, mMax);
     }
+  }
+
+  /** Returns the sweep angle of the progress arc for the current progress and max. */
+  private float computeSweepAngle() {
+    // Computed in double precision, as byte counts overflow an int and lose precision as a float.
+    return (float) (360.0 * mProgress / mMax);
+  }
 
-    Drawable iconDrawable = isChecked() ? mPinnedDrawable : mUnpinnedDrawable;
-    iconDrawable.setBounds(mTempRect);
-    iconDrawable.draw(canvas);
+  /**
+   * Update the drawn progress arc, which only redraws if its sweep angle has visibly changed. While
+   * tweening, the tween picks up the new progress on its next frame instead.
+   */
+  private void updateSweepAngle() {
+    publishProgress();
+    if (mTweening) {
+      return;
+    }
+    if (mMetrics != null && mSegments == null) {
+      // The drawable only invalidates if the change is visible. Segments count their own.
+      final long invalidations = mMetrics.getInvalidationCount();
+      mProgressDrawable.setSweepAngle(computeSweepAngle());
+      if (mMetrics.getInvalidationCount() == invalidations) {
+        mMetrics.recordSkippedInvalidation();
+      }
+    } else {
+      mProgressDrawable.setSweepAngle(computeSweepAngle());
+    }
+  }
 
-    mShadowDrawable.setBounds(mTempRect);
-    mShadowDrawable.draw(canvas);
+  @Override protected void onDraw(Canvas canvas) {
+    super.onDraw(canvas);
+    if (mMetrics != null) {
+      final long start = System.nanoTime();
+      mProgressDrawable.draw(canvas);
+      mMetrics.recordDraw(System.nanoTime() - start);
+    } else {
+      mProgressDrawable.draw(canvas);
+    }
+    if (mUndrawnFrames > MAX_UNDRAWN_FRAMES) {
+      mUndrawnFrames = 0;
+      updateAnimationClock();
+    } else {
+      mUndrawnFrames = 0;
+    }
   }
 
   @Override public Parcelable onSaveInstanceState() {
@@ -419,6 +1590,17 @@ public class ProgressButton extends CompoundButton {
       SavedState ss = new SavedState(superState);
       ss.mMax = mMax;
       ss.mProgress = mProgress;
+      ss.mFlags = mChangedProperties;
+      if (mAnimating) {
+        ss.mFlags |= SAVED_ANIMATING;
+        ss.mAnimationElapsedNanos = mAnimationElapsedNanos;
+      }
+      ss.mCircleColor = getCircleColor();
+      ss.mProgressColor = getProgressColor();
+      ss.mAnimationSpeed = mAnimationSpeed;
+      ss.mAnimationDelay = mAnimationDelay;
+      ss.mAnimationStripWidth = getAnimationStripWidth();
+      ss.mAnimationRevolutionsPerSecond = mAnimationRevolutionsPerSecond;
       return ss;
     }
     return superState;
@@ -435,9 +1617,37 @@ public class ProgressButton extends CompoundButton {
 
     mMax = ss.mMax;
     mProgress = ss.mProgress;
+    stopTween();
+    updateSweepAngle();
+    updateContentDescription();
+
+    if ((ss.mFlags & SAVED_CIRCLE_COLOR) != 0) {
+      setCircleColor(ss.mCircleColor);
+    }
+    if ((ss.mFlags & SAVED_PROGRESS_COLOR) != 0) {
+      setProgressColor(ss.mProgressColor);
+    }
+    if ((ss.mFlags & SAVED_ANIMATION_SETTINGS) != 0) {
+      setAnimationSpeed(ss.mAnimationSpeed);
+      setAnimationDelay(ss.mAnimationDelay);
+      setAnimationStripWidth(ss.mAnimationStripWidth);
+      setAnimationRevolutionsPerSecond(ss.mAnimationRevolutionsPerSecond);
+    }
+    if ((ss.mFlags & SAVED_ANIMATING) != 0) {
+      startAnimating();
+      // Pick up at the same phase instead of starting over from the end of the progress arc.
+      mAnimationElapsedNanos = ss.mAnimationElapsedNanos;
+      mProgressDrawable.setStripAngle(computeAnimationAngle(mAnimationElapsedNanos));
+    } else if (mAnimating) {
+      stopAnimating();
+    }
   }
 
-  /** A {@link android.os.Parcelable} representing the {@link ProgressButton}'s state. */
+  /**
+   * A {@link android.os.Parcelable} representing the {@link ProgressButton}'s state. The pinned
+   * state is saved by {@link CompoundButton}. Colors and animation settings are only written if
+   * they were changed after the button was inflated, as flagged in the first int.
+   */
   public static class SavedState extends BaseSavedState {
     public static final Creator<SavedState> CREATOR = new Creator<SavedState>() {
       @Override public SavedState createFromParcel(Parcel parcel) {
@@ -448,8 +1658,16 @@ public class ProgressButton extends CompoundButton {
         return new SavedState[size];
       }
     };
-    private int mProgress;
-    private int mMax;
+    private int mFlags;
+    private long mProgress;
+    private long mMax;
+    private long mAnimationElapsedNanos;
+    private int mCircleColor;
+    private int mProgressColor;
+    private int mAnimationSpeed;
+    private int mAnimationDelay;
+    private int mAnimationStripWidth;
+    private float mAnimationRevolutionsPerSecond;
 
     public SavedState(Parcelable superState) {
       super(superState);
@@ -457,14 +1675,46 @@ public class ProgressButton extends CompoundButton {
 
     private SavedState(Parcel in) {
       super(in);
-      mProgress = in.readInt();
-      mMax = in.readInt();
+      mFlags = in.readInt();
+      mProgress = in.readLong();
+      mMax = in.readLong();
+      if ((mFlags & SAVED_ANIMATING) != 0) {
+        mAnimationElapsedNanos = in.readLong();
+      }
+      if ((mFlags & SAVED_CIRCLE_COLOR) != 0) {
+        mCircleColor = in.readInt();
+      }
+      if ((mFlags & SAVED_PROGRESS_COLOR) != 0) {
+        mProgressColor = in.readInt();
+      }
+      if ((mFlags & SAVED_ANIMATION_SETTINGS) != 0) {
+        mAnimationSpeed = in.readInt();
+        mAnimationDelay = in.readInt();
+        mAnimationStripWidth = in.readInt();
+        mAnimationRevolutionsPerSecond = in.readFloat();
+      }
     }
 
     @Override public void writeToParcel(Parcel out, int flags) {
       super.writeToParcel(out, flags);
-      out.writeInt(mProgress);
-      out.writeInt(mMax);
+      out.writeInt(mFlags);
+      out.writeLong(mProgress);
+      out.writeLong(mMax);
+      if ((mFlags & SAVED_ANIMATING) != 0) {
+        out.writeLong(mAnimationElapsedNanos);
+      }
+      if ((mFlags & SAVED_CIRCLE_COLOR) != 0) {
+        out.writeInt(mCircleColor);
+      }
+      if ((mFlags & SAVED_PROGRESS_COLOR) != 0) {
+        out.writeInt(mProgressColor);
+      }
+      if ((mFlags & SAVED_ANIMATION_SETTINGS) != 0) {
+        out.writeInt(mAnimationSpeed);
+        out.writeInt(mAnimationDelay);
+        out.writeInt(mAnimationStripWidth);
+        out.writeFloat(mAnimationRevolutionsPerSecond);
+      }
     }
   }
 }
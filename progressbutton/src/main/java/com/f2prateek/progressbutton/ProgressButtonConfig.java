@@ -0,0 +1,490 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.drawable.Drawable;
+import android.util.AttributeSet;
+
+/**
+ * The attributes of a {@link ProgressButton}, resolved once so that any number of buttons can be
+ * created from them without parsing attributes again.
+ * <p/>
+ * A config is resolved from a style with {@link #fromStyle(Context, int)}, or built with a
+ * {@link Builder}, and is immutable. Buttons are created from it with {@link #newButton(Context)}.
+ * Colors, dimensions and text are resolved for the configuration of the context they were
+ * resolved with, so a config should only be used for buttons in that context.
+ */
+public final class ProgressButtonConfig {
+  static final int DEFAULT_MAX = 100;
+  static final int DEFAULT_ANIMATION_SPEED = 1;
+  static final int DEFAULT_ANIMATION_DELAY = 50;
+  static final int DEFAULT_PROGRESS_ANIMATION_DURATION = 200;
+
+  private final long mProgress;
+  private final long mMax;
+  private final boolean mPinned;
+  private final boolean mAnimating;
+  private final int mCircleColor;
+  private final int mProgressColor;
+  private final int mPinnedDrawableId;
+  private final int mUnpinnedDrawableId;
+  private final int mShadowDrawableId;
+  private final int mInnerSize;
+  private final boolean mClickable;
+  private final boolean mFocusable;
+  /** The state of the background, so every button gets its own drawable, or null. */
+  private final Drawable.ConstantState mBackground;
+  private final int mAnimationSpeed;
+  private final int mAnimationDelay;
+  private final float mAnimationRevolutionsPerSecond;
+  private final int mAnimationStripWidth;
+  private final boolean mStaticLayerCacheEnabled;
+  private final int mArcPathResolution;
+  private final boolean mAutomaticHardwareLayerEnabled;
+  private final int mProgressAnimationDuration;
+  private final boolean mAutomaticContentDescriptionEnabled;
+  /** Indexed like the content descriptions of {@link ProgressButton}. */
+  private final CharSequence[] mStateContentDescriptions;
+
+  private ProgressButtonConfig(Builder builder) {
+    mProgress = builder.mProgress;
+    mMax = builder.mMax;
+    mPinned = builder.mPinned;
+    mAnimating = builder.mAnimating;
+    mCircleColor = builder.mCircleColor;
+    mProgressColor = builder.mProgressColor;
+    mPinnedDrawableId = builder.mPinnedDrawableId;
+    mUnpinnedDrawableId = builder.mUnpinnedDrawableId;
+    mShadowDrawableId = builder.mShadowDrawableId;
+    mInnerSize = builder.mInnerSize;
+    mClickable = builder.mClickable;
+    mFocusable = builder.mFocusable;
+    mBackground = builder.mBackground;
+    mAnimationSpeed = builder.mAnimationSpeed;
+    mAnimationDelay = builder.mAnimationDelay;
+    mAnimationRevolutionsPerSecond = builder.mAnimationRevolutionsPerSecond;
+    mAnimationStripWidth = builder.mAnimationStripWidth;
+    mStaticLayerCacheEnabled = builder.mStaticLayerCacheEnabled;
+    mArcPathResolution = builder.mArcPathResolution;
+    mAutomaticHardwareLayerEnabled = builder.mAutomaticHardwareLayerEnabled;
+    mProgressAnimationDuration = builder.mProgressAnimationDuration;
+    mAutomaticContentDescriptionEnabled = builder.mAutomaticContentDescriptionEnabled;
+    mStateContentDescriptions = builder.mStateContentDescriptions.clone();
+  }
+
+  /**
+   * Resolve the attributes of the given style attribute of the theme, for example
+   * {@link R.attr#progressButtonStyle}, the same way inflating a button with that style would.
+   */
+  public static ProgressButtonConfig fromStyle(Context context, int defStyle) {
+    return fromAttributes(context, null, defStyle);
+  }
+
+  /** Resolve the given attributes, falling back to the given style attribute of the theme. */
+  static ProgressButtonConfig fromAttributes(Context context, AttributeSet attrs, int defStyle) {
+    final TypedArray a = context.obtainStyledAttributes(attrs, R.styleable.ProgressButton, defStyle,
+        R.style.ProgressButton_Pin_Compat);
+    final Resources res = context.getResources();
+    final Builder builder = new Builder();
+
+    // Set as they are, like inflating a button always has.
+    builder.mMax = a.getInteger(R.styleable.ProgressButton_max, DEFAULT_MAX);
+    builder.mProgress = a.getInteger(R.styleable.ProgressButton_progress, 0);
+    builder.setPinned(a.getBoolean(R.styleable.ProgressButton_pinned, false));
+    builder.setAnimating(a.getBoolean(R.styleable.ProgressButton_animating, false));
+
+    builder.setCircleColor(a.getColor(R.styleable.ProgressButton_circleColor,
+        SharedResources.getColor(res, R.color.progress_default_circle_color)));
+    builder.setProgressColor(a.getColor(R.styleable.ProgressButton_progressColor,
+        SharedResources.getColor(res, R.color.progress_default_progress_color)));
+
+    builder.setPinnedDrawable(
+        a.getResourceId(R.styleable.ProgressButton_pinnedDrawable, R.drawable.pin_progress_pinned));
+    builder.setUnpinnedDrawable(a.getResourceId(R.styleable.ProgressButton_unpinnedDrawable,
+        R.drawable.pin_progress_unpinned));
+    builder.setShadowDrawable(
+        a.getResourceId(R.styleable.ProgressButton_shadowDrawable, R.drawable.pin_progress_shadow));
+    builder.setInnerSize(a.getDimensionPixelSize(R.styleable.ProgressButton_innerSize,
+        SharedResources.getDimensionPixelSize(res, R.dimen.progress_inner_size)));
+
+    builder.setClickable(a.getBoolean(R.styleable.ProgressButton_android_clickable, false));
+    builder.setFocusable(a.getBoolean(R.styleable.ProgressButton_android_focusable, false));
+    builder.setBackground(a.getDrawable(R.styleable.ProgressButton_android_background));
+
+    builder.setAnimationSpeed(
+        a.getInteger(R.styleable.ProgressButton_animationSpeed, DEFAULT_ANIMATION_SPEED));
+    builder.setAnimationDelay(
+        a.getInteger(R.styleable.ProgressButton_animationDelay, DEFAULT_ANIMATION_DELAY));
+    builder.mAnimationRevolutionsPerSecond =
+        a.getFloat(R.styleable.ProgressButton_animationRevolutionsPerSecond, 0);
+    builder.setAnimationStripWidth(a.getInteger(R.styleable.ProgressButton_animationStripWidth,
+        ProgressDrawable.DEFAULT_STRIP_WIDTH));
+    builder.setStaticLayerCacheEnabled(
+        a.getBoolean(R.styleable.ProgressButton_cacheStaticLayers, false));
+    builder.setArcPathResolution(a.getInteger(R.styleable.ProgressButton_arcPathResolution, 0));
+    builder.setAutomaticHardwareLayerEnabled(
+        a.getBoolean(R.styleable.ProgressButton_automaticHardwareLayer, false));
+    builder.mProgressAnimationDuration =
+        a.getInteger(R.styleable.ProgressButton_progressAnimationDuration,
+            DEFAULT_PROGRESS_ANIMATION_DURATION);
+
+    builder.setAutomaticContentDescriptionEnabled(
+        a.getBoolean(R.styleable.ProgressButton_automaticContentDescription, true));
+    builder.setStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_NOT_DOWNLOADED,
+        a.getText(R.styleable.ProgressButton_pinnedNotDownloadedDescription));
+    builder.setStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_DOWNLOADING,
+        a.getText(R.styleable.ProgressButton_pinnedDownloadingDescription));
+    builder.setStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_DOWNLOADED,
+        a.getText(R.styleable.ProgressButton_pinnedDownloadedDescription));
+    builder.setStateContentDescription(false, ProgressButton.DOWNLOAD_STATE_NOT_DOWNLOADED,
+        a.getText(R.styleable.ProgressButton_unpinnedNotDownloadedDescription));
+    builder.setStateContentDescription(false, ProgressButton.DOWNLOAD_STATE_DOWNLOADING,
+        a.getText(R.styleable.ProgressButton_unpinnedDownloadingDescription));
+    builder.setStateContentDescription(false, ProgressButton.DOWNLOAD_STATE_DOWNLOADED,
+        a.getText(R.styleable.ProgressButton_unpinnedDownloadedDescription));
+
+    a.recycle();
+    return builder.build();
+  }
+
+  /**
+   * Create a button from this config, which skips parsing its attributes. Creating many buttons
+   * from one config is cheaper than inflating them.
+   */
+  public ProgressButton newButton(Context context) {
+    return new ProgressButton(context, this);
+  }
+
+  /** Returns a builder that starts out with the values of this config. */
+  public Builder newBuilder() {
+    return new Builder(this);
+  }
+
+  public long getProgress() {
+    return mProgress;
+  }
+
+  public long getMax() {
+    return mMax;
+  }
+
+  public boolean isPinned() {
+    return mPinned;
+  }
+
+  public boolean isAnimating() {
+    return mAnimating;
+  }
+
+  public int getCircleColor() {
+    return mCircleColor;
+  }
+
+  public int getProgressColor() {
+    return mProgressColor;
+  }
+
+  public int getPinnedDrawable() {
+    return mPinnedDrawableId;
+  }
+
+  public int getUnpinnedDrawable() {
+    return mUnpinnedDrawableId;
+  }
+
+  public int getShadowDrawable() {
+    return mShadowDrawableId;
+  }
+
+  public int getInnerSize() {
+    return mInnerSize;
+  }
+
+  public boolean isClickable() {
+    return mClickable;
+  }
+
+  public boolean isFocusable() {
+    return mFocusable;
+  }
+
+  /** Returns a new background drawable, or null if buttons have no background. */
+  public Drawable newBackground(Resources res) {
+    return mBackground == null ? null : mBackground.newDrawable(res);
+  }
+
+  public int getAnimationSpeed() {
+    return mAnimationSpeed;
+  }
+
+  public int getAnimationDelay() {
+    return mAnimationDelay;
+  }
+
+  public float getAnimationRevolutionsPerSecond() {
+    return mAnimationRevolutionsPerSecond;
+  }
+
+  public int getAnimationStripWidth() {
+    return mAnimationStripWidth;
+  }
+
+  public boolean isStaticLayerCacheEnabled() {
+    return mStaticLayerCacheEnabled;
+  }
+
+  public int getArcPathResolution() {
+    return mArcPathResolution;
+  }
+
+  public boolean isAutomaticHardwareLayerEnabled() {
+    return mAutomaticHardwareLayerEnabled;
+  }
+
+  public int getProgressAnimationDuration() {
+    return mProgressAnimationDuration;
+  }
+
+  public boolean isAutomaticContentDescriptionEnabled() {
+    return mAutomaticContentDescriptionEnabled;
+  }
+
+  /** Returns the content description for the given pinned and download state, or null. */
+  public CharSequence getStateContentDescription(boolean pinned, int downloadState) {
+    return mStateContentDescriptions[ProgressButton.getContentDescriptionIndex(pinned,
+        downloadState)];
+  }
+
+  /** Returns the content description at the given index of {@link ProgressButton}, or null. */
+  CharSequence getStateContentDescription(int index) {
+    return mStateContentDescriptions[index];
+  }
+
+  /**
+   * Builds a {@link ProgressButtonConfig}. A new builder has the defaults of a button without a
+   * style, use {@link #fromStyle(Context, int)} and {@link #newBuilder()} to start from a style.
+   * Drawables are resource ids and colors are resolved values.
+   */
+  public static final class Builder {
+    private long mProgress = 0;
+    private long mMax = DEFAULT_MAX;
+    private boolean mPinned = false;
+    private boolean mAnimating = false;
+    private int mCircleColor;
+    private int mProgressColor;
+    private int mPinnedDrawableId = R.drawable.pin_progress_pinned;
+    private int mUnpinnedDrawableId = R.drawable.pin_progress_unpinned;
+    private int mShadowDrawableId = R.drawable.pin_progress_shadow;
+    private int mInnerSize;
+    private boolean mClickable = false;
+    private boolean mFocusable = false;
+    private Drawable.ConstantState mBackground;
+    private int mAnimationSpeed = DEFAULT_ANIMATION_SPEED;
+    private int mAnimationDelay = DEFAULT_ANIMATION_DELAY;
+    private float mAnimationRevolutionsPerSecond = 0;
+    private int mAnimationStripWidth = ProgressDrawable.DEFAULT_STRIP_WIDTH;
+    private boolean mStaticLayerCacheEnabled = false;
+    private int mArcPathResolution = 0;
+    private boolean mAutomaticHardwareLayerEnabled = false;
+    private int mProgressAnimationDuration = DEFAULT_PROGRESS_ANIMATION_DURATION;
+    private boolean mAutomaticContentDescriptionEnabled = true;
+    private final CharSequence[] mStateContentDescriptions =
+        new CharSequence[ProgressButton.STATE_CONTENT_DESCRIPTION_COUNT];
+
+    /** Start from the default colors and inner size of the given resources. */
+    public Builder(Resources res) {
+      mCircleColor = SharedResources.getColor(res, R.color.progress_default_circle_color);
+      mProgressColor = SharedResources.getColor(res, R.color.progress_default_progress_color);
+      mInnerSize = SharedResources.getDimensionPixelSize(res, R.dimen.progress_inner_size);
+    }
+
+    /** Start from nothing, for configs that are resolved from attributes. */
+    Builder() {
+    }
+
+    Builder(ProgressButtonConfig config) {
+      mProgress = config.mProgress;
+      mMax = config.mMax;
+      mPinned = config.mPinned;
+      mAnimating = config.mAnimating;
+      mCircleColor = config.mCircleColor;
+      mProgressColor = config.mProgressColor;
+      mPinnedDrawableId = config.mPinnedDrawableId;
+      mUnpinnedDrawableId = config.mUnpinnedDrawableId;
+      mShadowDrawableId = config.mShadowDrawableId;
+      mInnerSize = config.mInnerSize;
+      mClickable = config.mClickable;
+      mFocusable = config.mFocusable;
+      mBackground = config.mBackground;
+      mAnimationSpeed = config.mAnimationSpeed;
+      mAnimationDelay = config.mAnimationDelay;
+      mAnimationRevolutionsPerSecond = config.mAnimationRevolutionsPerSecond;
+      mAnimationStripWidth = config.mAnimationStripWidth;
+      mStaticLayerCacheEnabled = config.mStaticLayerCacheEnabled;
+      mArcPathResolution = config.mArcPathResolution;
+      mAutomaticHardwareLayerEnabled = config.mAutomaticHardwareLayerEnabled;
+      mProgressAnimationDuration = config.mProgressAnimationDuration;
+      mAutomaticContentDescriptionEnabled = config.mAutomaticContentDescriptionEnabled;
+      System.arraycopy(config.mStateContentDescriptions, 0, mStateContentDescriptions, 0,
+          mStateContentDescriptions.length);
+    }
+
+    /** Sets the progress and max, both of which must be valid values. */
+    public Builder setProgressAndMax(long progress, long max) {
+      ProgressButton.checkProgressAndMax(progress, max);
+      mProgress = progress;
+      mMax = max;
+      return this;
+    }
+
+    public Builder setPinned(boolean pinned) {
+      mPinned = pinned;
+      return this;
+    }
+
+    public Builder setAnimating(boolean animating) {
+      mAnimating = animating;
+      return this;
+    }
+
+    public Builder setCircleColor(int circleColor) {
+      mCircleColor = circleColor;
+      return this;
+    }
+
+    public Builder setProgressColor(int progressColor) {
+      mProgressColor = progressColor;
+      return this;
+    }
+
+    /** Sets the resource id of the drawable shown while pinned. */
+    public Builder setPinnedDrawable(int id) {
+      mPinnedDrawableId = id;
+      return this;
+    }
+
+    /** Sets the resource id of the drawable shown while unpinned. */
+    public Builder setUnpinnedDrawable(int id) {
+      mUnpinnedDrawableId = id;
+      return this;
+    }
+
+    /** Sets the resource id of the shadow drawable, whose size is the size of the button. */
+    public Builder setShadowDrawable(int id) {
+      mShadowDrawableId = id;
+      return this;
+    }
+
+    /** Sets the size of the inner circle, in pixels. */
+    public Builder setInnerSize(int innerSize) {
+      mInnerSize = innerSize;
+      return this;
+    }
+
+    public Builder setClickable(boolean clickable) {
+      mClickable = clickable;
+      return this;
+    }
+
+    public Builder setFocusable(boolean focusable) {
+      mFocusable = focusable;
+      return this;
+    }
+
+    /**
+     * Sets the background, which every button gets its own copy of. Backgrounds without a
+     * constant state can't be copied, and are ignored.
+     */
+    public Builder setBackground(Drawable background) {
+      mBackground = background == null ? null : background.getConstantState();
+      return this;
+    }
+
+    public Builder setAnimationSpeed(int animationSpeed) {
+      mAnimationSpeed = animationSpeed;
+      return this;
+    }
+
+    public Builder setAnimationDelay(int animationDelay) {
+      mAnimationDelay = animationDelay;
+      return this;
+    }
+
+    /** Sets the revolutions per second of the strip, or 0 to derive it from speed and delay. */
+    public Builder setAnimationRevolutionsPerSecond(float revolutionsPerSecond) {
+      if (revolutionsPerSecond < 0) {
+        throw new IllegalArgumentException(
+            String.format("Revolutions per second (%f) must be >= 0", revolutionsPerSecond));
+      }
+      mAnimationRevolutionsPerSecond = revolutionsPerSecond;
+      return this;
+    }
+
+    public Builder setAnimationStripWidth(int animationStripWidth) {
+      mAnimationStripWidth = animationStripWidth;
+      return this;
+    }
+
+    public Builder setStaticLayerCacheEnabled(boolean enabled) {
+      mStaticLayerCacheEnabled = enabled;
+      return this;
+    }
+
+    /** Sets the number of steps per revolution of cached arc paths, or 0 to draw arcs. */
+    public Builder setArcPathResolution(int resolution) {
+      if (resolution < 0) {
+        throw new IllegalArgumentException(
+            String.format("Resolution (%d) must be >= 0", resolution));
+      }
+      mArcPathResolution = resolution;
+      return this;
+    }
+
+    public Builder setAutomaticHardwareLayerEnabled(boolean enabled) {
+      mAutomaticHardwareLayerEnabled = enabled;
+      return this;
+    }
+
+    public Builder setProgressAnimationDuration(int duration) {
+      if (duration < 0) {
+        throw new IllegalArgumentException(String.format("Duration (%d) must be >= 0", duration));
+      }
+      mProgressAnimationDuration = duration;
+      return this;
+    }
+
+    public Builder setAutomaticContentDescriptionEnabled(boolean enabled) {
+      mAutomaticContentDescriptionEnabled = enabled;
+      return this;
+    }
+
+    /** Sets the content description for the given pinned and download state, or null. */
+    public Builder setStateContentDescription(boolean pinned, int downloadState,
+        CharSequence description) {
+      mStateContentDescriptions[ProgressButton.getContentDescriptionIndex(pinned,
+          downloadState)] = description;
+      return this;
+    }
+
+    public ProgressButtonConfig build() {
+      return new ProgressButtonConfig(this);
+    }
+  }
+}
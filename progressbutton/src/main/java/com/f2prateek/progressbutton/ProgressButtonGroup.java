@@ -0,0 +1,162 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Applies updates to many {@link ProgressButton}s in a single pass per frame.
+ * <p/>
+ * Updates are queued and applied together on the next frame. Only the latest update queued for a
+ * button is applied, each button is redrawn at most once for its progress, max and pinned state
+ * together, including its content description, and the {@link OnButtonUpdatedListener} is
+ * notified once for every button that changed.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+public final class ProgressButtonGroup {
+  /** Notified after a batch has been applied, once for every button that changed. */
+  public interface OnButtonUpdatedListener {
+    void onButtonUpdated(ProgressButton button);
+  }
+
+  /** A queued update. Entries are recycled once they have been applied. */
+  private static final class Entry {
+    ProgressButton mButton;
+    long mProgress;
+    long mMax;
+    boolean mPinned;
+  }
+
+  /** Queued updates, in the order their buttons were first updated. */
+  private final ArrayList<Entry> mPending = new ArrayList<Entry>();
+  private final IdentityHashMap<ProgressButton, Entry> mPendingByButton =
+      new IdentityHashMap<ProgressButton, Entry>();
+  private final ArrayList<Entry> mRecycled = new ArrayList<Entry>();
+  private OnButtonUpdatedListener mListener;
+
+  /** Applies the queued updates on the frame after they were queued. */
+  private final AnimationClock.Callback mFrameCallback = new AnimationClock.Callback() {
+    @Override public void doFrame(long frameTimeNanos) {
+      apply();
+    }
+  };
+
+  /** Set the listener that is notified for every button that changed when a batch is applied. */
+  public void setOnButtonUpdatedListener(OnButtonUpdatedListener listener) {
+    mListener = listener;
+  }
+
+  /**
+   * Queue the progress, max and pinned state of the given button, all of which must be valid
+   * values. Replaces any update already queued for the button.
+   */
+  public void update(ProgressButton button, long progress, long max, boolean pinned) {
+    ProgressButton.checkProgressAndMax(progress, max);
+    Entry entry = mPendingByButton.get(button);
+    if (entry == null) {
+      entry = mRecycled.isEmpty() ? new Entry() : mRecycled.remove(mRecycled.size() - 1);
+      entry.mButton = button;
+      mPendingByButton.put(button, entry);
+      mPending.add(entry);
+      AnimationClock.getInstance().addCallback(mFrameCallback);
+    }
+    entry.mProgress = progress;
+    entry.mMax = max;
+    entry.mPinned = pinned;
+  }
+
+  /**
+   * Queue the progress of the given button (must be between 0 and max), keeping the max and
+   * pinned state it has, or that are already queued for it.
+   */
+  public void setProgress(ProgressButton button, long progress) {
+    final Entry entry = mPendingByButton.get(button);
+    if (entry != null) {
+      update(button, progress, entry.mMax, entry.mPinned);
+    } else {
+      update(button, progress, button.getMaxLong(), button.isPinned());
+    }
+  }
+
+  /**
+   * Queue the pinned state of the given button, keeping the progress and max it has, or that are
+   * already queued for it.
+   */
+  public void setPinned(ProgressButton button, boolean pinned) {
+    final Entry entry = mPendingByButton.get(button);
+    if (entry != null) {
+      entry.mPinned = pinned;
+    } else {
+      update(button, button.getProgressLong(), button.getMaxLong(), pinned);
+    }
+  }
+
+  /** Returns true if any updates are waiting to be applied. */
+  public boolean hasPendingUpdates() {
+    return !mPending.isEmpty();
+  }
+
+  /** Discard the queued update of the given button, if any. */
+  public void cancel(ProgressButton button) {
+    final Entry entry = mPendingByButton.remove(button);
+    if (entry != null) {
+      mPending.remove(entry);
+      recycle(entry);
+      if (mPending.isEmpty()) {
+        AnimationClock.getInstance().removeCallback(mFrameCallback);
+      }
+    }
+  }
+
+  /**
+   * Apply every queued update now instead of waiting for the next frame. Updates queued by the
+   * listener are applied on the next frame.
+   */
+  public void apply() {
+    AnimationClock.getInstance().removeCallback(mFrameCallback);
+    // Checked change listeners and the listener may queue new updates while applying, which are
+    // added after the applied ones.
+    mPendingByButton.clear();
+    final int count = mPending.size();
+    for (int i = 0; i < count; i++) {
+      final Entry entry = mPending.get(i);
+      if (!entry.mButton.applyUpdate(entry.mProgress, entry.mMax, entry.mPinned)) {
+        // Nothing to tell the listener about.
+        entry.mButton = null;
+      }
+    }
+    for (int i = 0; i < count; i++) {
+      final Entry entry = mPending.get(i);
+      if (entry.mButton != null && mListener != null) {
+        mListener.onButtonUpdated(entry.mButton);
+      }
+      recycle(entry);
+    }
+    if (mPending.size() == count) {
+      mPending.clear();
+    } else {
+      mPending.subList(0, count).clear();
+    }
+  }
+
+  private void recycle(Entry entry) {
+    entry.mButton = null;
+    mRecycled.add(entry);
+  }
+}
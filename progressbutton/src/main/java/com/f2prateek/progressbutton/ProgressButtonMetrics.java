@@ -0,0 +1,180 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+/**
+ * Rendering metrics of a {@link ProgressButton}, or of every button with metrics enabled.
+ * <p/>
+ * Metrics are collected once enabled with {@link ProgressButton#setMetricsEnabled(boolean)}, and
+ * only cost a few counters and two reads of {@link System#nanoTime()} per draw and tick. The
+ * instances returned by {@link ProgressButton#getMetrics()} and
+ * {@link ProgressButton#getGlobalMetrics()} are snapshots, which don't change afterwards.
+ * <p/>
+ * Frame deadlines assume a 60Hz display.
+ */
+public final class ProgressButtonMetrics {
+  /** The interval between two frames on a 60Hz display. */
+  static final long FRAME_INTERVAL_NANOS = 1000000000L / 60;
+
+  /** Also receives everything recorded here, or null. */
+  private final ProgressButtonMetrics mParent;
+  private long mDrawCount;
+  private long mDrawNanos;
+  private long mInvalidationCount;
+  private long mSkippedInvalidationCount;
+  private long mTickCount;
+  private long mLateTickCount;
+  private long mDroppedFrameCount;
+  /** Frame time of the previous tick, or 0 if ticks have been interrupted since. */
+  private long mLastFrameTimeNanos;
+
+  ProgressButtonMetrics(ProgressButtonMetrics parent) {
+    mParent = parent;
+  }
+
+  /** Returns the number of times the button was drawn. */
+  public long getDrawCount() {
+    return mDrawCount;
+  }
+
+  /** Returns the total time spent drawing the button, in nanoseconds. */
+  public long getDrawNanos() {
+    return mDrawNanos;
+  }
+
+  /** Returns the average time spent drawing the button once, in nanoseconds. */
+  public long getAverageDrawNanos() {
+    return mDrawCount == 0 ? 0 : mDrawNanos / mDrawCount;
+  }
+
+  /** Returns the number of times the progress arc, strip or colors requested a redraw. */
+  public long getInvalidationCount() {
+    return mInvalidationCount;
+  }
+
+  /**
+   * Returns the number of progress updates that didn't redraw the button, because they didn't
+   * visibly change the progress arc.
+   */
+  public long getSkippedInvalidationCount() {
+    return mSkippedInvalidationCount;
+  }
+
+  /** Returns the number of frames the animation strip or a progress tween was ticked on. */
+  public long getTickCount() {
+    return mTickCount;
+  }
+
+  /** Returns the number of ticks that ran more than a frame after the frame they were for. */
+  public long getLateTickCount() {
+    return mLateTickCount;
+  }
+
+  /**
+   * Returns an estimate of the number of frames that were dropped while ticking, from the gaps
+   * between the frames that were ticked.
+   */
+  public long getDroppedFrameCount() {
+    return mDroppedFrameCount;
+  }
+
+  void recordDraw(long nanos) {
+    mDrawCount++;
+    mDrawNanos += nanos;
+    if (mParent != null) {
+      mParent.recordDraw(nanos);
+    }
+  }
+
+  void recordInvalidation() {
+    mInvalidationCount++;
+    if (mParent != null) {
+      mParent.recordInvalidation();
+    }
+  }
+
+  void recordSkippedInvalidation() {
+    mSkippedInvalidationCount++;
+    if (mParent != null) {
+      mParent.recordSkippedInvalidation();
+    }
+  }
+
+  /** Record a tick for the given frame, which started at the given time. */
+  void recordTick(long frameTimeNanos) {
+    // A button ticks once per frame for the strip and once for a tween, which is the same frame.
+    long droppedFrames = 0;
+    if (mLastFrameTimeNanos != 0 && frameTimeNanos > mLastFrameTimeNanos) {
+      droppedFrames = Math.max(0, Math.round(
+          (double) (frameTimeNanos - mLastFrameTimeNanos) / FRAME_INTERVAL_NANOS) - 1);
+    }
+    mLastFrameTimeNanos = frameTimeNanos;
+    recordTick(System.nanoTime() - frameTimeNanos > FRAME_INTERVAL_NANOS, droppedFrames);
+  }
+
+  private void recordTick(boolean late, long droppedFrames) {
+    mTickCount++;
+    if (late) {
+      mLateTickCount++;
+    }
+    mDroppedFrameCount += droppedFrames;
+    if (mParent != null) {
+      mParent.recordTick(late, droppedFrames);
+    }
+  }
+
+  /** Forget the previous tick, as the gap until the next tick isn't made of dropped frames. */
+  void interruptTicks() {
+    mLastFrameTimeNanos = 0;
+  }
+
+  /** Returns a copy of the current metrics. */
+  ProgressButtonMetrics snapshot() {
+    final ProgressButtonMetrics snapshot = new ProgressButtonMetrics(null);
+    snapshot.mDrawCount = mDrawCount;
+    snapshot.mDrawNanos = mDrawNanos;
+    snapshot.mInvalidationCount = mInvalidationCount;
+    snapshot.mSkippedInvalidationCount = mSkippedInvalidationCount;
+    snapshot.mTickCount = mTickCount;
+    snapshot.mLateTickCount = mLateTickCount;
+    snapshot.mDroppedFrameCount = mDroppedFrameCount;
+    return snapshot;
+  }
+
+  void reset() {
+    mDrawCount = 0;
+    mDrawNanos = 0;
+    mInvalidationCount = 0;
+    mSkippedInvalidationCount = 0;
+    mTickCount = 0;
+    mLateTickCount = 0;
+    mDroppedFrameCount = 0;
+    mLastFrameTimeNanos = 0;
+  }
+
+  @Override public String toString() {
+    return "ProgressButtonMetrics{"
+        + "draws=" + mDrawCount
+        + ", drawNanos=" + mDrawNanos
+        + ", invalidations=" + mInvalidationCount
+        + ", skippedInvalidations=" + mSkippedInvalidationCount
+        + ", ticks=" + mTickCount
+        + ", lateTicks=" + mLateTickCount
+        + ", droppedFrames=" + mDroppedFrameCount
+        + '}';
+  }
+}
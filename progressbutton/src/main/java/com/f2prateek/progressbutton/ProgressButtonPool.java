@@ -0,0 +1,102 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.content.Context;
+import android.os.Looper;
+import android.os.MessageQueue;
+import java.util.ArrayList;
+
+/**
+ * Creates {@link ProgressButton}s ahead of time, while the main thread is idle, so that the rows
+ * of a list don't pay for creating their buttons while it first scrolls.
+ * <p/>
+ * Buttons are created from a {@link ProgressButtonConfig}, one per idle pass of the main thread,
+ * until the pool holds its capacity. {@link #acquire()} hands out a pooled button if there is one
+ * and creates one otherwise, and the pool fills up again the next time the main thread is idle.
+ * Buttons are not returned to the pool.
+ * <p/>
+ * A pool holds on to its context, so it should not outlive it. All methods must be called from
+ * the main thread.
+ */
+public final class ProgressButtonPool {
+  private final Context mContext;
+  private final ProgressButtonConfig mConfig;
+  private final int mCapacity;
+  private final ArrayList<ProgressButton> mButtons;
+  private boolean mFilling = false;
+
+  /** Creates one button per idle pass until the pool is full. */
+  private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+    @Override public boolean queueIdle() {
+      if (mButtons.size() < mCapacity) {
+        mButtons.add(mConfig.newButton(mContext));
+      }
+      mFilling = mButtons.size() < mCapacity;
+      return mFilling;
+    }
+  };
+
+  /** Create a pool of up to the given number of buttons created from the given config. */
+  public ProgressButtonPool(Context context, ProgressButtonConfig config, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException(String.format("Capacity (%d) must be > 0", capacity));
+    }
+    mContext = context;
+    mConfig = config;
+    mCapacity = capacity;
+    mButtons = new ArrayList<ProgressButton>(capacity);
+  }
+
+  /** Start filling the pool while the main thread is idle. */
+  public void prefill() {
+    if (!mFilling && mButtons.size() < mCapacity) {
+      mFilling = true;
+      Looper.myQueue().addIdleHandler(mIdleHandler);
+    }
+  }
+
+  /**
+   * Returns a pooled button, or a new one if the pool is empty, and starts filling the pool again.
+   */
+  public ProgressButton acquire() {
+    final ProgressButton button = mButtons.isEmpty()
+        ? mConfig.newButton(mContext)
+        : mButtons.remove(mButtons.size() - 1);
+    prefill();
+    return button;
+  }
+
+  /** Returns the number of buttons ready to be acquired. */
+  public int getAvailableCount() {
+    return mButtons.size();
+  }
+
+  /** Returns the maximum number of buttons held by the pool. */
+  public int getCapacity() {
+    return mCapacity;
+  }
+
+  /** Drop every pooled button and stop filling the pool. */
+  public void clear() {
+    if (mFilling) {
+      mFilling = false;
+      Looper.myQueue().removeIdleHandler(mIdleHandler);
+    }
+    mButtons.clear();
+  }
+}
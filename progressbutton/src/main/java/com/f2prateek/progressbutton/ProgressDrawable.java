@@ -0,0 +1,682 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ * Copyright 2012 Roman Nurik
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
+import java.util.Arrays;
+
+/**
+ * A {@link Drawable} that renders the pin progress indicator: a circle with the progress arc,
+ * the optional animation strip, and the pin and shadow drawables on top.
+ * <p/>
+ * This is what {@link ProgressButton} draws, but it can be used on its own wherever a view per
+ * indicator is too heavy, for example in an {@link android.widget.ImageView}, a notification or
+ * drawn directly onto a canvas for many items. The indicator is centered in the bounds of the
+ * drawable, and its intrinsic size is the size of the shadow drawable.
+ * <p/>
+ * The level of the drawable maps onto the progress, from 0 for no progress to 10000 for
+ * complete. The progress arc can also be split into segments, for example one per byte range of
+ * a download that is fetched in parallel.
+ * <p/>
+ * Drawables share their resources, paints and arc paths with every other drawable through
+ * process wide caches that aren't synchronized. All methods, including the constructors and
+ * {@link #draw(Canvas)}, must therefore be called from the main thread, also when the drawable is
+ * rendered into a bitmap, for example for a notification.
+ */
+public class ProgressDrawable extends Drawable implements Drawable.Callback {
+  /** The maximum level of a drawable. */
+  private static final int MAX_LEVEL = 10000;
+  /** Width of the animation strip, in degrees. */
+  static final int DEFAULT_STRIP_WIDTH = 6;
+
+  /** The drawable used as the shadow. */
+  private Drawable mShadowDrawable;
+  /** The drawable displayed when the item is unpinned. */
+  private Drawable mUnpinnedDrawable;
+  /** The drawable displayed when the item is pinned. */
+  private Drawable mPinnedDrawable;
+  /** True if the pinned drawable is displayed. Defaults to false. */
+  private boolean mPinned = false;
+  /** The paint for the circle. */
+  private Paint mCirclePaint;
+  /** The paint for the progress arc and the animation strip. */
+  private Paint mProgressPaint;
+  /**
+   * True if the paints belong to this drawable, false if they are shared with other drawables
+   * and must not be modified.
+   */
+  private boolean mOwnsPaints = false;
+  private int mCircleColor;
+  private int mProgressColor;
+  private int mAlpha = 0xff;
+  private ColorFilter mColorFilter;
+  private int mInnerSize;
+  /** The sweep angle of the progress arc, in degrees. */
+  private float mSweepAngle = 0;
+  /** The sweep angle of the progress arc when it was last invalidated, in degrees. */
+  private float mInvalidatedSweepAngle = 0;
+  /** The smallest change of the sweep angle that visibly changes the arc, in degrees. */
+  private float mMinimumVisibleSweepDelta;
+  /** Number of segments drawn instead of the progress arc, 0 to draw the progress arc. */
+  private int mSegmentCount = 0;
+  /** Start angles of the segments, in degrees clockwise from the top. */
+  private float[] mSegmentStartAngles;
+  /** Sweep angles of the segments, in degrees. */
+  private float[] mSegmentSweepAngles;
+  /** The sweep angles of the segments when they were last invalidated. */
+  private float[] mInvalidatedSegmentSweepAngles;
+  /** True if the animation strip is drawn. Defaults to false. */
+  private boolean mStripVisible = false;
+  /** Angle of the animation strip, in degrees clockwise from the top. */
+  private float mStripAngle = 0;
+  /** Width of the animation strip, in degrees. Defaults to 6. */
+  private int mStripWidth = DEFAULT_STRIP_WIDTH;
+
+  /** True if the icon and shadow are drawn from a shared bitmap. Defaults to false. */
+  private boolean mCacheStaticLayers = false;
+  /** The cached icon and shadow, or null if they must be drawn directly. */
+  private Bitmap mStaticLayer;
+  /** False if {@link #mStaticLayer} must be looked up again before it is drawn. */
+  private boolean mStaticLayerValid = false;
+  /** Steps per revolution the arcs are quantized to, or 0 to draw exact arcs. Defaults to 0. */
+  private int mArcPathResolution = 0;
+  /** Paths for the current inner size and resolution, or null if they must be looked up. */
+  private ArcPathCache mArcPathCache;
+
+  /** Bounds of the icon and shadow. */
+  private final Rect mIconBounds = new Rect();
+  /** Bounds of the inner circle. */
+  private final RectF mInnerRect = new RectF();
+  /** Bounds of the inner circle, rounded out to whole pixels. */
+  private final Rect mInnerBounds = new Rect();
+
+  /**
+   * Create a drawable with the default pin style. The default resources are shared by every
+   * drawable created this way.
+   */
+  public ProgressDrawable(Resources res) {
+    this(SharedResources.getDrawable(res, R.drawable.pin_progress_pinned),
+        SharedResources.getDrawable(res, R.drawable.pin_progress_unpinned),
+        SharedResources.getDrawable(res, R.drawable.pin_progress_shadow),
+        SharedResources.getDimensionPixelSize(res, R.dimen.progress_inner_size),
+        SharedResources.getColor(res, R.color.progress_default_circle_color),
+        SharedResources.getColor(res, R.color.progress_default_progress_color));
+  }
+
+  public ProgressDrawable(Drawable pinnedDrawable, Drawable unpinnedDrawable,
+      Drawable shadowDrawable, int innerSize, int circleColor, int progressColor) {
+    mPinnedDrawable = pinnedDrawable;
+    mPinnedDrawable.setCallback(this);
+    mUnpinnedDrawable = unpinnedDrawable;
+    mUnpinnedDrawable.setCallback(this);
+    mShadowDrawable = shadowDrawable;
+    mShadowDrawable.setCallback(this);
+    mInnerSize = innerSize;
+    computeMinimumVisibleSweepDelta();
+
+    mCircleColor = circleColor;
+    mProgressColor = progressColor;
+    updatePaintColors();
+  }
+
+  /** Returns the sweep angle of the progress arc, in degrees. */
+  public float getSweepAngle() {
+    return mSweepAngle;
+  }
+
+  /**
+   * Sets the sweep angle of the progress arc, in degrees from 0 to 360. Changes too small to be
+   * visible don't redraw the arc until they add up to a visible change, but the empty and the
+   * full arc are always redrawn.
+   *
+   * @see #getMinimumVisibleSweepDelta()
+   */
+  public void setSweepAngle(float sweepAngle) {
+    if (mSweepAngle != sweepAngle) {
+      mSweepAngle = sweepAngle;
+      if (sweepAngle <= 0
+          || sweepAngle >= 360
+          || Math.abs(sweepAngle - mInvalidatedSweepAngle) >= mMinimumVisibleSweepDelta) {
+        mInvalidatedSweepAngle = sweepAngle;
+        invalidateInnerCircle();
+      }
+    }
+  }
+
+  /**
+   * Returns the smallest change of the sweep angle that visibly changes the progress arc, in
+   * degrees. This is one step of the arc path resolution if it is set, otherwise the angle that
+   * moves the end of the arc by a pixel along the edge of the inner circle.
+   */
+  public float getMinimumVisibleSweepDelta() {
+    return mMinimumVisibleSweepDelta;
+  }
+
+  /**
+   * Sets the sweep angle of the progress arc from the given progress (must be between 0 and
+   * max).
+   */
+  public void setProgress(long progress, long max) {
+    if (progress > max || progress < 0) {
+      throw new IllegalArgumentException(
+          String.format("Progress (%d) must be between %d and %d", progress, 0, max));
+    } else if (max <= 0) {
+      throw new IllegalArgumentException(String.format("Max (%d) must be > 0", max));
+    }
+    setSweepAngle((float) (360.0 * progress / max));
+  }
+
+  /** Returns the number of segments drawn instead of the progress arc, or 0 if there are none. */
+  public int getSegmentCount() {
+    return mSegmentCount;
+  }
+
+  /**
+   * Draw the given number of arc segments instead of the progress arc, or the progress arc again
+   * if the count is 0. Every segment starts out empty at the top.
+   *
+   * @see #setSegment(int, float, float)
+   */
+  public void setSegmentCount(int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException(String.format("Count (%d) must be >= %d", count, 0));
+    }
+    if (mSegmentStartAngles == null || mSegmentStartAngles.length < count) {
+      mSegmentStartAngles = new float[count];
+      mSegmentSweepAngles = new float[count];
+      mInvalidatedSegmentSweepAngles = new float[count];
+    } else {
+      Arrays.fill(mSegmentStartAngles, 0);
+      Arrays.fill(mSegmentSweepAngles, 0);
+      Arrays.fill(mInvalidatedSegmentSweepAngles, 0);
+    }
+    if (mSegmentCount != count) {
+      mSegmentCount = count;
+      invalidateInnerCircle();
+    }
+  }
+
+  /** Returns the start angle of the given segment, in degrees clockwise from the top. */
+  public float getSegmentStartAngle(int index) {
+    checkSegmentIndex(index);
+    return mSegmentStartAngles[index];
+  }
+
+  /** Returns the sweep angle of the given segment, in degrees. */
+  public float getSegmentSweepAngle(int index) {
+    checkSegmentIndex(index);
+    return mSegmentSweepAngles[index];
+  }
+
+  /**
+   * Sets the start angle of the given segment, in degrees clockwise from the top, and its sweep
+   * angle. Like the progress arc, changes of the sweep angle too small to be visible don't redraw
+   * the segment until they add up to a visible change.
+   *
+   * @see #setSweepAngle(float)
+   */
+  public void setSegment(int index, float startAngle, float sweepAngle) {
+    checkSegmentIndex(index);
+    if (mSegmentStartAngles[index] != startAngle) {
+      mSegmentStartAngles[index] = startAngle;
+      mSegmentSweepAngles[index] = sweepAngle;
+      mInvalidatedSegmentSweepAngles[index] = sweepAngle;
+      invalidateInnerCircle();
+    } else if (mSegmentSweepAngles[index] != sweepAngle) {
+      mSegmentSweepAngles[index] = sweepAngle;
+      if (sweepAngle <= 0 || Math.abs(sweepAngle - mInvalidatedSegmentSweepAngles[index])
+          >= mMinimumVisibleSweepDelta) {
+        mInvalidatedSegmentSweepAngles[index] = sweepAngle;
+        invalidateInnerCircle();
+      }
+    }
+  }
+
+  private void checkSegmentIndex(int index) {
+    if (index < 0 || index >= mSegmentCount) {
+      throw new IllegalArgumentException(
+          String.format("Segment (%d) must be between %d and %d", index, 0, mSegmentCount - 1));
+    }
+  }
+
+  @Override protected boolean onLevelChange(int level) {
+    final float sweepAngle = 360f * level / MAX_LEVEL;
+    if (mSweepAngle != sweepAngle) {
+      mSweepAngle = sweepAngle;
+      return true;
+    }
+    return false;
+  }
+
+  /** Returns true if the animation strip is drawn. */
+  public boolean isStripVisible() {
+    return mStripVisible;
+  }
+
+  /** Set whether the animation strip is drawn. */
+  public void setStripVisible(boolean visible) {
+    if (mStripVisible != visible) {
+      mStripVisible = visible;
+      invalidateInnerCircle();
+    }
+  }
+
+  /** Returns the angle of the animation strip, in degrees clockwise from the top. */
+  public float getStripAngle() {
+    return mStripAngle;
+  }
+
+  /** Sets the angle of the animation strip, in degrees clockwise from the top. */
+  public void setStripAngle(float stripAngle) {
+    if (mStripAngle != stripAngle) {
+      mStripAngle = stripAngle;
+      if (mStripVisible) {
+        invalidateInnerCircle();
+      }
+    }
+  }
+
+  /** Returns the width of the animation strip, in degrees. */
+  public int getStripWidth() {
+    return mStripWidth;
+  }
+
+  /** Sets the width of the animation strip, in degrees. Defaults to 6. */
+  public void setStripWidth(int stripWidth) {
+    if (mStripWidth != stripWidth) {
+      mStripWidth = stripWidth;
+      if (mStripVisible) {
+        invalidateInnerCircle();
+      }
+    }
+  }
+
+  /** Returns true if the pinned drawable is displayed. */
+  public boolean isPinned() {
+    return mPinned;
+  }
+
+  /** Set whether the pinned or the unpinned drawable is displayed. */
+  public void setPinned(boolean pinned) {
+    if (mPinned != pinned) {
+      mPinned = pinned;
+      mStaticLayerValid = false;
+      invalidateSelf();
+    }
+  }
+
+  /** Get the color used to display the progress level. */
+  public int getProgressColor() {
+    return mProgressColor;
+  }
+
+  /** Sets the color used to display the progress level. */
+  public void setProgressColor(int progressColor) {
+    mProgressColor = progressColor;
+    updatePaintColors();
+    invalidateInnerCircle();
+  }
+
+  /** Get the color used to display the progress background. */
+  public int getCircleColor() {
+    return mCircleColor;
+  }
+
+  /** Sets the color used to display the progress background. */
+  public void setCircleColor(int circleColor) {
+    mCircleColor = circleColor;
+    updatePaintColors();
+    invalidateInnerCircle();
+  }
+
+  /** Get the drawable that is displayed when the item is pinned. */
+  public Drawable getPinnedDrawable() {
+    return mPinnedDrawable;
+  }
+
+  /** Set the drawable that is displayed when the item is pinned. */
+  public void setPinnedDrawable(Drawable pinnedDrawable) {
+    mPinnedDrawable = updateChild(mPinnedDrawable, pinnedDrawable);
+  }
+
+  /** Get the drawable that is displayed when the item is unpinned. */
+  public Drawable getUnpinnedDrawable() {
+    return mUnpinnedDrawable;
+  }
+
+  /** Set the drawable that is displayed when the item is unpinned. */
+  public void setUnpinnedDrawable(Drawable unpinnedDrawable) {
+    mUnpinnedDrawable = updateChild(mUnpinnedDrawable, unpinnedDrawable);
+  }
+
+  /** Get the drawable that is displayed as the shadow. */
+  public Drawable getShadowDrawable() {
+    return mShadowDrawable;
+  }
+
+  /**
+   * Set the drawable that is displayed as the shadow. The intrinsic size of the shadow is the
+   * intrinsic size of this drawable.
+   */
+  public void setShadowDrawable(Drawable shadowDrawable) {
+    mShadowDrawable = updateChild(mShadowDrawable, shadowDrawable);
+    computeBounds();
+  }
+
+  private Drawable updateChild(Drawable oldChild, Drawable newChild) {
+    if (oldChild != null) {
+      oldChild.setCallback(null);
+    }
+    newChild.setCallback(this);
+    if (newChild.isStateful()) {
+      newChild.setState(getState());
+    }
+    if (mAlpha != 0xff) {
+      newChild = newChild.mutate();
+      newChild.setAlpha(mAlpha);
+    }
+    mStaticLayerValid = false;
+    invalidateSelf();
+    return newChild;
+  }
+
+  /** Returns the size of the inner circle. */
+  public int getInnerSize() {
+    return mInnerSize;
+  }
+
+  /** Sets the size of the inner circle. */
+  public void setInnerSize(int innerSize) {
+    mInnerSize = innerSize;
+    mArcPathCache = null;
+    computeMinimumVisibleSweepDelta();
+    computeBounds();
+    invalidateSelf();
+  }
+
+  /** Returns true if the icon and shadow are drawn from a shared bitmap. */
+  public boolean isStaticLayerCacheEnabled() {
+    return mCacheStaticLayers;
+  }
+
+  /**
+   * Set whether the icon and shadow are drawn from a bitmap. The bitmap is rendered once for each
+   * size, pinned state and drawable state, and shared by every drawable with the same child
+   * drawables, so each frame only draws the progress arcs and the bitmap. Drawables without a
+   * constant state are always drawn directly.
+   */
+  public void setStaticLayerCacheEnabled(boolean enabled) {
+    if (mCacheStaticLayers != enabled) {
+      mCacheStaticLayers = enabled;
+      mStaticLayer = null;
+      mStaticLayerValid = false;
+      invalidateSelf();
+    }
+  }
+
+  /**
+   * Returns the number of steps per revolution the arcs are quantized to, or 0 if exact arcs are
+   * drawn.
+   */
+  public int getArcPathResolution() {
+    return mArcPathResolution;
+  }
+
+  /**
+   * Set the number of steps per revolution the arcs are quantized to, or 0 to draw exact arcs.
+   * Quantized arcs are drawn from paths that are built once and shared by every drawable with the
+   * same inner size and resolution, so drawing doesn't tessellate any wedges. For example a
+   * resolution of 360 rounds the arcs to whole degrees. Defaults to 0.
+   */
+  public void setArcPathResolution(int resolution) {
+    if (resolution < 0) {
+      throw new IllegalArgumentException(
+          String.format("Resolution (%d) must be >= 0", resolution));
+    }
+    mArcPathResolution = resolution;
+    mArcPathCache = null;
+    computeMinimumVisibleSweepDelta();
+    invalidateInnerCircle();
+  }
+
+  /** Returns the bounds of the inner circle, rounded out to whole pixels. */
+  Rect getInnerBounds() {
+    return mInnerBounds;
+  }
+
+  @Override public int getIntrinsicWidth() {
+    return mShadowDrawable.getIntrinsicWidth();
+  }
+
+  @Override public int getIntrinsicHeight() {
+    return mShadowDrawable.getIntrinsicWidth();
+  }
+
+  @Override public boolean isStateful() {
+    return mPinnedDrawable.isStateful()
+        || mUnpinnedDrawable.isStateful()
+        || mShadowDrawable.isStateful();
+  }
+
+  @Override protected boolean onStateChange(int[] state) {
+    boolean changed = false;
+    if (mPinnedDrawable.isStateful()) {
+      changed |= mPinnedDrawable.setState(state);
+    }
+    if (mUnpinnedDrawable.isStateful()) {
+      changed |= mUnpinnedDrawable.setState(state);
+    }
+    if (mShadowDrawable.isStateful()) {
+      changed |= mShadowDrawable.setState(state);
+    }
+    if (changed) {
+      mStaticLayerValid = false;
+    }
+    return changed;
+  }
+
+  @Override protected void onBoundsChange(Rect bounds) {
+    computeBounds();
+  }
+
+  @Override public void setAlpha(int alpha) {
+    if (mAlpha != alpha) {
+      mAlpha = alpha;
+      mutateChildren();
+      mPinnedDrawable.setAlpha(alpha);
+      mUnpinnedDrawable.setAlpha(alpha);
+      mShadowDrawable.setAlpha(alpha);
+      updatePaintColors();
+      mStaticLayerValid = false;
+      invalidateSelf();
+    }
+  }
+
+  @Override public void setColorFilter(ColorFilter cf) {
+    mutateChildren();
+    mColorFilter = cf;
+    updatePaintColors();
+    mPinnedDrawable.setColorFilter(cf);
+    mUnpinnedDrawable.setColorFilter(cf);
+    mShadowDrawable.setColorFilter(cf);
+    mStaticLayerValid = false;
+    invalidateSelf();
+  }
+
+  @Override public int getOpacity() {
+    return PixelFormat.TRANSLUCENT;
+  }
+
+  @Override public void invalidateDrawable(Drawable who) {
+    mStaticLayerValid = false;
+    invalidateSelf();
+  }
+
+  @Override public void scheduleDrawable(Drawable who, Runnable what, long when) {
+    scheduleSelf(what, when);
+  }
+
+  @Override public void unscheduleDrawable(Drawable who, Runnable what) {
+    unscheduleSelf(what);
+  }
+
+  /**
+   * Make sure the child drawables don't share their state with other drawables, before changing
+   * their alpha or color filter.
+   */
+  private void mutateChildren() {
+    mPinnedDrawable = mPinnedDrawable.mutate();
+    mUnpinnedDrawable = mUnpinnedDrawable.mutate();
+    mShadowDrawable = mShadowDrawable.mutate();
+  }
+
+  /**
+   * Update the paints for the current colors, alpha and color filter. Plain colors use the paints
+   * shared by every drawable, anything else copies them once and modifies the copies from then on.
+   */
+  private void updatePaintColors() {
+    if (!mOwnsPaints) {
+      mCirclePaint = SharedResources.getPaint(mCircleColor);
+      mProgressPaint = SharedResources.getPaint(mProgressColor);
+      if (mAlpha == 0xff && mColorFilter == null) {
+        return;
+      }
+      mCirclePaint = new Paint(mCirclePaint);
+      mProgressPaint = new Paint(mProgressPaint);
+      mOwnsPaints = true;
+    }
+    mCirclePaint.setColorFilter(mColorFilter);
+    mProgressPaint.setColorFilter(mColorFilter);
+    mCirclePaint.setColor(mCircleColor);
+    mCirclePaint.setAlpha((mCircleColor >>> 24) * mAlpha / 0xff);
+    mProgressPaint.setColor(mProgressColor);
+    mProgressPaint.setAlpha((mProgressColor >>> 24) * mAlpha / 0xff);
+  }
+
+  private void computeMinimumVisibleSweepDelta() {
+    if (mArcPathResolution > 0) {
+      mMinimumVisibleSweepDelta = 360f / mArcPathResolution;
+    } else {
+      // The circumference of the inner circle is pi * innerSize pixels.
+      mMinimumVisibleSweepDelta = (float) (360 / (Math.PI * Math.max(mInnerSize, 1)));
+    }
+  }
+
+  /** Compute the bounds of the icon and the inner circle, centered in the bounds. */
+  private void computeBounds() {
+    final Rect bounds = getBounds();
+    final int drawableSize = getIntrinsicWidth();
+    mIconBounds.set(0, 0, drawableSize, drawableSize);
+    mIconBounds.offset(bounds.left + (bounds.width() - drawableSize) / 2,
+        bounds.top + (bounds.height() - drawableSize) / 2);
+
+    mInnerRect.set(-0.5f, -0.5f, mInnerSize + 0.5f, mInnerSize + 0.5f);
+    mInnerRect.offset(bounds.left + (bounds.width() - mInnerSize) / 2,
+        bounds.top + (bounds.height() - mInnerSize) / 2);
+    mInnerRect.roundOut(mInnerBounds);
+  }
+
+  /**
+   * Invalidate the inner circle, which is all that changes with the progress, strip and colors. A
+   * {@link ProgressButton} only redraws those bounds, other callbacks redraw the whole drawable.
+   */
+  private void invalidateInnerCircle() {
+    final Callback callback = getCallback();
+    if (callback instanceof ProgressButton) {
+      ((ProgressButton) callback).invalidateInnerCircle(mInnerBounds);
+    } else {
+      invalidateSelf();
+    }
+  }
+
+  @Override public void draw(Canvas canvas) {
+    if (mArcPathResolution > 0) {
+      drawArcPaths(canvas);
+    } else {
+      canvas.drawArc(mInnerRect, 0, 360, true, mCirclePaint);
+      if (mSegmentCount > 0) {
+        for (int i = 0; i < mSegmentCount; i++) {
+          canvas.drawArc(mInnerRect, -90 + mSegmentStartAngles[i], mSegmentSweepAngles[i], true,
+              mProgressPaint);
+        }
+      } else {
+        canvas.drawArc(mInnerRect, -90, mSweepAngle, true, mProgressPaint);
+      }
+
+      if (mStripVisible) {
+        canvas.drawArc(mInnerRect, -90 + mStripAngle, mStripWidth, true, mProgressPaint);
+      }
+    }
+
+    final Drawable iconDrawable = mPinned ? mPinnedDrawable : mUnpinnedDrawable;
+    if (mCacheStaticLayers) {
+      if (!mStaticLayerValid) {
+        mStaticLayer = StaticLayerCache.get(iconDrawable, mShadowDrawable, mIconBounds.width(),
+            getState());
+        mStaticLayerValid = true;
+      }
+      if (mStaticLayer != null) {
+        canvas.drawBitmap(mStaticLayer, mIconBounds.left, mIconBounds.top, null);
+        return;
+      }
+    }
+
+    iconDrawable.setBounds(mIconBounds);
+    iconDrawable.draw(canvas);
+
+    mShadowDrawable.setBounds(mIconBounds);
+    mShadowDrawable.draw(canvas);
+  }
+
+  /**
+   * Draw the circle, progress arc or segments and animation strip from the shared
+   * {@link ArcPathCache}.
+   */
+  private void drawArcPaths(Canvas canvas) {
+    if (mArcPathCache == null) {
+      mArcPathCache = ArcPathCache.get(mInnerSize, mArcPathResolution);
+    }
+    final int saveCount = canvas.save();
+    canvas.translate(mInnerRect.left + 0.5f, mInnerRect.top + 0.5f);
+    canvas.drawPath(mArcPathCache.getWedge(360), mCirclePaint);
+    final float center = mArcPathCache.getCenter();
+    if (mSegmentCount > 0) {
+      for (int i = 0; i < mSegmentCount; i++) {
+        canvas.rotate(mSegmentStartAngles[i], center, center);
+        canvas.drawPath(mArcPathCache.getWedge(mSegmentSweepAngles[i]), mProgressPaint);
+        canvas.rotate(-mSegmentStartAngles[i], center, center);
+      }
+    } else {
+      canvas.drawPath(mArcPathCache.getWedge(mSweepAngle), mProgressPaint);
+    }
+
+    if (mStripVisible) {
+      canvas.rotate(mStripAngle, center, center);
+      canvas.drawPath(mArcPathCache.getWedge(mStripWidth), mProgressPaint);
+    }
+    canvas.restoreToCount(saveCount);
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * An {@link InputStream} that shows the number of bytes read from it on a {@link ProgressButton}.
+ * <p/>
+ * The stream can be read from any thread. Bytes are counted without locking, and the count is
+ * posted to the button at most once per interval, as well as when the end of the stream is reached
+ * and when it is closed. The length of the stream, for example from the content length of a
+ * response, is set as the max of the button. If it isn't known nothing is posted, as the count
+ * can't be shown as progress; the animation strip can show that the stream is being read instead.
+ * <p/>
+ * The clock is read once per read call, so reading single bytes is best done through a buffered
+ * stream below this one. The button is held weakly, so a stream that outlives its screen doesn't
+ * keep it alive, and stops posting once it is gone.
+ */
+public final class ProgressInputStream extends FilterInputStream {
+  private final ProgressPublisher mPublisher;
+  private long mMarkCount;
+
+  /**
+   * Show the progress of reading the given stream on the given button, posting it about once per
+   * frame.
+   *
+   * @param length the number of bytes in the stream, or -1 to post nothing if it isn't known
+   */
+  public ProgressInputStream(InputStream in, ProgressButton button, long length) {
+    this(in, button, length, ProgressPublisher.DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Show the progress of reading the given stream on the given button, posting it at most once per
+   * the given interval.
+   *
+   * @param length the number of bytes in the stream, or -1 to post nothing if it isn't known
+   */
+  public ProgressInputStream(InputStream in, ProgressButton button, long length,
+      long intervalMillis) {
+    super(in);
+    mPublisher = new ProgressPublisher(button, length, intervalMillis);
+  }
+
+  /** Returns the number of bytes read so far. */
+  public long getCount() {
+    return mPublisher.getCount();
+  }
+
+  @Override public int read() throws IOException {
+    final int b = in.read();
+    if (b >= 0) {
+      mPublisher.add(1);
+    } else {
+      mPublisher.publish();
+    }
+    return b;
+  }
+
+  @Override public int read(byte[] buffer, int offset, int count) throws IOException {
+    final int read = in.read(buffer, offset, count);
+    if (read > 0) {
+      mPublisher.add(read);
+    } else if (read < 0) {
+      mPublisher.publish();
+    }
+    return read;
+  }
+
+  @Override public long skip(long count) throws IOException {
+    final long skipped = in.skip(count);
+    if (skipped > 0) {
+      mPublisher.add(skipped);
+    }
+    return skipped;
+  }
+
+  @Override public synchronized void mark(int readLimit) {
+    in.mark(readLimit);
+    mMarkCount = mPublisher.getCount();
+  }
+
+  @Override public synchronized void reset() throws IOException {
+    in.reset();
+    mPublisher.rewind(mMarkCount);
+  }
+
+  @Override public void close() throws IOException {
+    try {
+      in.close();
+    } finally {
+      mPublisher.publish();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Counts bytes as they are read and posts them to a {@link ProgressButton} at a bounded rate.
+ * Shared by {@link ProgressInputStream} and {@link ProgressReadableByteChannel}.
+ * <p/>
+ * Counting is a plain field update, as a stream is read by one thread at a time, and the clock is
+ * read once per read call. Only posting hands anything over to the main thread.
+ * <p/>
+ * Without a length there is no max to show the count against, so nothing is posted and the button
+ * is left as it is.
+ * <p/>
+ * The button is held weakly, as a transfer can outlive the screen it was started from, for example
+ * across a rotation. Once the button has been collected nothing is posted anymore.
+ */
+final class ProgressPublisher {
+  /** The default minimum interval between two posts, about one frame. */
+  static final long DEFAULT_INTERVAL_MILLIS = 16;
+
+  private final WeakReference<ProgressButton> mButton;
+  private final long mLength;
+  private final long mIntervalNanos;
+  private long mCount;
+  /** The count when it was last posted, or -1 if it hasn't been posted yet. */
+  private long mPublishedCount = -1;
+  private long mPublishedTimeNanos;
+
+  ProgressPublisher(ProgressButton button, long length, long intervalMillis) {
+    if (button == null) {
+      throw new IllegalArgumentException("Button must not be null");
+    }
+    if (intervalMillis < 0) {
+      throw new IllegalArgumentException(
+          String.format("Interval (%d) must be >= %d", intervalMillis, 0));
+    }
+    mButton = new WeakReference<ProgressButton>(button);
+    mLength = length > 0 ? length : -1;
+    mIntervalNanos = intervalMillis * 1000000;
+    publish();
+  }
+
+  long getCount() {
+    return mCount;
+  }
+
+  /** Count the given number of bytes, and post them if the interval has passed since the last. */
+  void add(long bytes) {
+    mCount += bytes;
+    if (System.nanoTime() - mPublishedTimeNanos >= mIntervalNanos) {
+      publish();
+    }
+  }
+
+  /** Move the count back to the given value, for example after resetting a stream to its mark. */
+  void rewind(long count) {
+    mCount = count;
+    publish();
+  }
+
+  /**
+   * Post the count right away unless it has already been posted, the length isn't known or the
+   * button is gone.
+   */
+  void publish() {
+    if (mLength < 0 || mCount == mPublishedCount) {
+      return;
+    }
+    final ProgressButton button = mButton.get();
+    if (button == null) {
+      return;
+    }
+    mPublishedCount = mCount;
+    mPublishedTimeNanos = System.nanoTime();
+    // A stream that is longer than it claimed stays at its length.
+    button.postProgressAndMax(Math.min(mCount, mLength), mLength);
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * A {@link ReadableByteChannel} that shows the number of bytes read from it on a
+ * {@link ProgressButton}.
+ * <p/>
+ * Like {@link ProgressInputStream}, bytes are counted without locking and posted to the button at
+ * most once per interval, as well as when the end of the channel is reached and when it is closed.
+ * The button is held weakly, and nothing is posted once it is gone.
+ */
+public final class ProgressReadableByteChannel implements ReadableByteChannel {
+  private final ReadableByteChannel mChannel;
+  private final ProgressPublisher mPublisher;
+
+  /**
+   * Show the progress of reading the given channel on the given button, posting it about once per
+   * frame.
+   *
+   * @param length the number of bytes in the channel, or -1 to post nothing if it isn't known
+   */
+  public ProgressReadableByteChannel(ReadableByteChannel channel, ProgressButton button,
+      long length) {
+    this(channel, button, length, ProgressPublisher.DEFAULT_INTERVAL_MILLIS);
+  }
+
+  /**
+   * Show the progress of reading the given channel on the given button, posting it at most once
+   * per the given interval.
+   *
+   * @param length the number of bytes in the channel, or -1 to post nothing if it isn't known
+   */
+  public ProgressReadableByteChannel(ReadableByteChannel channel, ProgressButton button,
+      long length, long intervalMillis) {
+    if (channel == null) {
+      throw new IllegalArgumentException("Channel must not be null");
+    }
+    mChannel = channel;
+    mPublisher = new ProgressPublisher(button, length, intervalMillis);
+  }
+
+  /** Returns the number of bytes read so far. */
+  public long getCount() {
+    return mPublisher.getCount();
+  }
+
+  @Override public int read(ByteBuffer buffer) throws IOException {
+    final int read = mChannel.read(buffer);
+    if (read > 0) {
+      mPublisher.add(read);
+    } else if (read < 0) {
+      mPublisher.publish();
+    }
+    return read;
+  }
+
+  @Override public boolean isOpen() {
+    return mChannel.isOpen();
+  }
+
+  @Override public void close() throws IOException {
+    try {
+      mChannel.close();
+    } finally {
+      mPublisher.publish();
+    }
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * The progress, max, pinned and animating state of an item, independent of any view.
+ * <p/>
+ * A state is owned by the item it describes, for example a row in a list of downloads, and can
+ * be updated whether or not it is displayed. A {@link ProgressButton} displays a state with
+ * {@link ProgressButton#bind(ProgressState)}, which applies all of it in a single pass, so a
+ * recycled button can be rebound to another item cheaply. While the button is bound and attached
+ * to a window, changes to the state are applied to the button. Changes made through the button,
+ * like the user pinning it or progress posted to it, are written back to the state for as long as
+ * it is bound, attached or not. Updates to a state that isn't displayed only set its fields.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+public class ProgressState {
+  private long mProgress = 0;
+  private long mMax = 100;
+  private boolean mPinned = false;
+  private boolean mAnimating = false;
+  /**
+   * The button this state is bound to, or null if it isn't bound. Held weakly, as a state usually
+   * outlives the screen its button is on.
+   */
+  private WeakReference<ProgressButton> mButton;
+
+  public ProgressState() {
+  }
+
+  public ProgressState(long progress, long max, boolean pinned) {
+    ProgressButton.checkProgressAndMax(progress, max);
+    mProgress = progress;
+    mMax = max;
+    mPinned = pinned;
+  }
+
+  /** Returns the current progress from 0 to max. */
+  public long getProgress() {
+    return mProgress;
+  }
+
+  /** Sets the current progress (must be between 0 and max). */
+  public void setProgress(long progress) {
+    ProgressButton.checkProgressAndMax(progress, mMax);
+    mProgress = progress;
+    final ProgressButton button = getFollowingButton();
+    if (button != null) {
+      button.setProgress(progress);
+    }
+  }
+
+  /** Returns the maximum progress value. */
+  public long getMax() {
+    return mMax;
+  }
+
+  /** Sets the maximum progress value (must be > 0 and at least the progress). Defaults to 100. */
+  public void setMax(long max) {
+    ProgressButton.checkProgressAndMax(mProgress, max);
+    mMax = max;
+    final ProgressButton button = getFollowingButton();
+    if (button != null) {
+      button.setMax(max);
+    }
+  }
+
+  /** Sets the current progress and maximum progress value, both of which must be valid. */
+  public void setProgressAndMax(long progress, long max) {
+    ProgressButton.checkProgressAndMax(progress, max);
+    mProgress = progress;
+    mMax = max;
+    final ProgressButton button = getFollowingButton();
+    if (button != null) {
+      button.setProgressAndMax(progress, max);
+    }
+  }
+
+  /** Returns true if the item is pinned. */
+  public boolean isPinned() {
+    return mPinned;
+  }
+
+  /** Set whether the item is pinned. */
+  public void setPinned(boolean pinned) {
+    mPinned = pinned;
+    final ProgressButton button = getFollowingButton();
+    if (button != null) {
+      button.setPinned(pinned);
+    }
+  }
+
+  /** Returns true if the animation strip is shown. */
+  public boolean isAnimating() {
+    return mAnimating;
+  }
+
+  /** Set whether the animation strip is shown. */
+  public void setAnimating(boolean animating) {
+    mAnimating = animating;
+    final ProgressButton button = getFollowingButton();
+    if (button != null) {
+      if (animating) {
+        button.startAnimating();
+      } else {
+        button.stopAnimating();
+      }
+    }
+  }
+
+  /** Returns the button this state is bound to, or null if it isn't bound. */
+  ProgressButton getButton() {
+    return mButton == null ? null : mButton.get();
+  }
+
+  void setButton(ProgressButton button) {
+    mButton = button == null ? null : new WeakReference<ProgressButton>(button);
+  }
+
+  /** Returns the bound button if changes to this state should be applied to it, or null. */
+  private ProgressButton getFollowingButton() {
+    final ProgressButton button = getButton();
+    return button != null && button.isFollowingState() ? button : null;
+  }
+
+  /** Copy the progress and max of the button this state is bound to. */
+  void updateProgress(long progress, long max) {
+    mProgress = progress;
+    mMax = max;
+  }
+
+  /** Copy the pinned state of the button this state is bound to. */
+  void updatePinned(boolean pinned) {
+    mPinned = pinned;
+  }
+
+  /** Copy the animating state of the button this state is bound to. */
+  void updateAnimating(boolean animating) {
+    mAnimating = animating;
+  }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.graphics.Paint;
+import android.graphics.drawable.Drawable;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process wide pool of the resources used by every {@link ProgressDrawable}.
+ * <p/>
+ * Drawables are cached by their constant state, so buttons inflated from the same style get new
+ * drawables that share their state without going back to the resources. Colors and dimensions are
+ * cached by resource id. Everything resolved from resources is dropped when the configuration
+ * changes.
+ * <p/>
+ * Paints are shared by color and must never be modified, a drawable that needs a different alpha
+ * or color filter copies them first.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+final class SharedResources {
+  /** Maximum number of shared paints. */
+  static final int MAX_PAINTS = 32;
+
+  private static final SparseArray<Drawable.ConstantState> DRAWABLES =
+      new SparseArray<Drawable.ConstantState>();
+  private static final SparseIntArray COLORS = new SparseIntArray();
+  private static final SparseIntArray DIMENSIONS = new SparseIntArray();
+  private static final Map<Integer, Paint> PAINTS =
+      new LinkedHashMap<Integer, Paint>(16, 0.75f, true) {
+        @Override protected boolean removeEldestEntry(Map.Entry<Integer, Paint> eldest) {
+          return size() > MAX_PAINTS;
+        }
+      };
+  /** The configuration the cached resources were resolved for. */
+  private static Configuration sConfiguration;
+
+  private SharedResources() {
+    // no instances
+  }
+
+  /** Returns a new drawable for the given resource id that shares its state with the pool. */
+  static Drawable getDrawable(Resources res, int id) {
+    checkConfiguration(res);
+    final Drawable.ConstantState state = DRAWABLES.get(id);
+    if (state != null) {
+      return state.newDrawable(res);
+    }
+    final Drawable drawable = res.getDrawable(id);
+    if (drawable.getConstantState() != null) {
+      DRAWABLES.put(id, drawable.getConstantState());
+    }
+    return drawable;
+  }
+
+  /** Returns the color for the given resource id. */
+  static int getColor(Resources res, int id) {
+    checkConfiguration(res);
+    final int index = COLORS.indexOfKey(id);
+    if (index >= 0) {
+      return COLORS.valueAt(index);
+    }
+    final int color = res.getColor(id);
+    COLORS.put(id, color);
+    return color;
+  }
+
+  /** Returns the dimension in pixels for the given resource id. */
+  static int getDimensionPixelSize(Resources res, int id) {
+    checkConfiguration(res);
+    final int index = DIMENSIONS.indexOfKey(id);
+    if (index >= 0) {
+      return DIMENSIONS.valueAt(index);
+    }
+    final int size = res.getDimensionPixelSize(id);
+    DIMENSIONS.put(id, size);
+    return size;
+  }
+
+  /** Returns a shared anti aliased paint of the given color. The paint must not be modified. */
+  static Paint getPaint(int color) {
+    Paint paint = PAINTS.get(color);
+    if (paint == null) {
+      paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+      paint.setColor(color);
+      PAINTS.put(color, paint);
+    }
+    return paint;
+  }
+
+  /** Drop every cached resource. */
+  static void clear() {
+    DRAWABLES.clear();
+    COLORS.clear();
+    DIMENSIONS.clear();
+    PAINTS.clear();
+    sConfiguration = null;
+  }
+
+  /** Drop the cached resources if they were resolved for a different configuration. */
+  private static void checkConfiguration(Resources res) {
+    final Configuration configuration = res.getConfiguration();
+    if (sConfiguration == null || sConfiguration.diff(configuration) != 0) {
+      DRAWABLES.clear();
+      COLORS.clear();
+      DIMENSIONS.clear();
+      sConfiguration = new Configuration(configuration);
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2013 Prateek Srivastava (@f2prateek)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * 	http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.f2prateek.progressbutton;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.drawable.Drawable;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A process wide cache of the static layers of a {@link ProgressButton}, the pin icon and the
+ * shadow, rasterized into a single bitmap.
+ * <p/>
+ * Layers are keyed by the constant state of their drawables, their size and their drawable state,
+ * so every button with the same configuration shares one bitmap. Drawables without a constant
+ * state can't be identified across buttons, and are never cached.
+ * <p/>
+ * All methods must be called from the main thread.
+ */
+final class StaticLayerCache {
+  /** Maximum number of bitmaps kept in the cache. */
+  static final int MAX_ENTRIES = 16;
+
+  private static final int[] NO_STATE = new int[0];
+
+  private static final Map<Key, Bitmap> CACHE = new LinkedHashMap<Key, Bitmap>(16, 0.75f, true) {
+    @Override protected boolean removeEldestEntry(Map.Entry<Key, Bitmap> eldest) {
+      // Evicted bitmaps may still be drawn by a button, so they are left to the garbage collector.
+      return size() > MAX_ENTRIES;
+    }
+  };
+
+  private StaticLayerCache() {
+    // no instances
+  }
+
+  /**
+   * Returns a bitmap of the given size with the icon drawn below the shadow, or null if the layers
+   * can't be cached.
+   */
+  static Bitmap get(Drawable icon, Drawable shadow, int size, int[] state) {
+    final Drawable.ConstantState iconState = icon.getConstantState();
+    final Drawable.ConstantState shadowState = shadow.getConstantState();
+    if (iconState == null || shadowState == null || size <= 0) {
+      return null;
+    }
+    // The drawable state only matters if one of the layers reacts to it.
+    final int[] keyState = icon.isStateful() || shadow.isStateful() ? state.clone() : NO_STATE;
+    final Key key = new Key(iconState, shadowState, size, keyState);
+
+    Bitmap layer = CACHE.get(key);
+    if (layer == null) {
+      layer = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+      final Canvas canvas = new Canvas(layer);
+      icon.setBounds(0, 0, size, size);
+      icon.draw(canvas);
+      shadow.setBounds(0, 0, size, size);
+      shadow.draw(canvas);
+      CACHE.put(key, layer);
+    }
+    return layer;
+  }
+
+  /** Remove every bitmap from the cache. */
+  static void clear() {
+    CACHE.clear();
+  }
+
+  private static final class Key {
+    private final Drawable.ConstantState mIconState;
+    private final Drawable.ConstantState mShadowState;
+    private final int mSize;
+    private final int[] mState;
+
+    Key(Drawable.ConstantState iconState, Drawable.ConstantState shadowState, int size,
+        int[] state) {
+      mIconState = iconState;
+      mShadowState = shadowState;
+      mSize = size;
+      mState = state;
+    }
+
+    @Override public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return mIconState == other.mIconState
+          && mShadowState == other.mShadowState
+          && mSize == other.mSize
+          && Arrays.equals(mState, other.mState);
+    }
+
+    @Override public int hashCode() {
+      int result = System.identityHashCode(mIconState);
+      result = 31 * result + System.identityHashCode(mShadowState);
+      result = 31 * result + mSize;
+      result = 31 * result + Arrays.hashCode(mState);
+      return result;
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package com.f2prateek.progressbutton;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.fest.assertions.api.Fail.fail;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Fails a test if an operation allocates, by counting the bytes allocated by the current thread.
+ * <p/>
+ * The operation is run once per iteration to warm up caches and the JIT, and then measured for
+ * the same number of iterations. Tests are skipped on JVMs that can't count allocations.
+ */
+final class AllocationTracker {
+  /** An operation that must not allocate. */
+  interface Operation {
+    /** Run the operation once, iteration counts up from 0. */
+    void run(int iteration);
+  }
+
+  private AllocationTracker() {
+    // no instances
+  }
+
+  static void assertNoAllocations(String name, int iterations, Operation operation) {
+    final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    assumeTrue(bean instanceof com.sun.management.ThreadMXBean
+        && ((com.sun.management.ThreadMXBean) bean).isThreadAllocatedMemoryEnabled());
+    final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    final long threadId = Thread.currentThread().getId();
+
+    for (int i = 0; i < iterations; i++) {
+      operation.run(i);
+    }
+
+    // Reading the counter may allocate itself, so measure that first and subtract it.
+    long start = threads.getThreadAllocatedBytes(threadId);
+    final long overhead = threads.getThreadAllocatedBytes(threadId) - start;
+
+    start = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < iterations; i++) {
+      operation.run(i);
+    }
+    final long allocated = threads.getThreadAllocatedBytes(threadId) - start - overhead;
+    if (allocated > 0) {
+      fail(String.format("%s allocated %d bytes over %d iterations", name, allocated, iterations));
+    }
+  }
+}
@@ -1,18 +1,43 @@
 package com.f2prateek.progressbutton;
 
 import android.app.Activity;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.PixelFormat;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.graphics.drawable.Drawable;
 import android.os.Parcelable;
+import android.util.AttributeSet;
+import android.view.View;
 import android.widget.CompoundButton;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
+import org.robolectric.res.Attribute;
+import org.robolectric.shadows.RoboAttributeSet;
 
 import static org.fest.assertions.api.Assertions.assertThat;
 import static org.fest.assertions.api.Fail.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.reset;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 
 @RunWith(RobolectricTestRunner.class) @Config(manifest = "src/main/AndroidManifest.xml")
@@ -128,6 +153,32 @@ public class ProgressButtonTest {
     assertThat(button.getMax()).isEqualTo(842);
   }
 
+  @Test public void savedStateRestoresAnimationAndColors() {
+    button.setProgressColor(0xff00ff00);
+    button.setAnimationStripWidth(12);
+    button.setAnimationRevolutionsPerSecond(2);
+    button.startAnimating();
+    final Parcelable parcelable = button.onSaveInstanceState();
+
+    ProgressButton restored = new ProgressButton(activity);
+    int circleColor = restored.getCircleColor();
+    restored.onRestoreInstanceState(parcelable);
+    assertThat(restored.isAnimating()).isTrue();
+    assertThat(restored.getProgressColor()).isEqualTo(0xff00ff00);
+    assertThat(restored.getCircleColor()).isEqualTo(circleColor);
+    assertThat(restored.getAnimationStripWidth()).isEqualTo(12);
+    assertThat(restored.getAnimationRevolutionsPerSecond()).isEqualTo(2f);
+    restored.stopAnimating();
+    button.stopAnimating();
+  }
+
+  @Test public void savedStateStopsAnimation() {
+    final Parcelable parcelable = button.onSaveInstanceState();
+    button.startAnimating();
+    button.onRestoreInstanceState(parcelable);
+    assertThat(button.isAnimating()).isFalse();
+  }
+
   @Test public void settingMaxLessThanProgress() {
     button.setProgress(25);
     try {
@@ -168,4 +219,1116 @@ public class ProgressButtonTest {
     } catch (IllegalArgumentException e) {
     }
   }
+
+  @Test public void startAndStopAnimating() {
+    assertThat(button.isAnimating()).isFalse();
+    button.startAnimating();
+    assertThat(button.isAnimating()).isTrue();
+    button.stopAnimating();
+    assertThat(button.isAnimating()).isFalse();
+  }
+
+  @Test public void animationClockTicksUntilCallbacksAreRemoved() {
+    final int[] ticks = new int[1];
+    final int[] frames = new int[1];
+    AnimationClock clock = new AnimationClock(new AnimationClock.FrameScheduler() {
+      @Override void postFrame() {
+        frames[0]++;
+      }
+
+      @Override void cancelFrame() {
+        frames[0]--;
+      }
+    });
+    AnimationClock.Callback callback = new AnimationClock.Callback() {
+      @Override public void doFrame(long frameTimeNanos) {
+        ticks[0]++;
+      }
+    };
+
+    clock.addCallback(callback);
+    assertThat(frames[0]).isEqualTo(1);
+    clock.doFrame(16000000L);
+    assertThat(ticks[0]).isEqualTo(1);
+    assertThat(frames[0]).isEqualTo(2);
+
+    clock.removeCallback(callback);
+    assertThat(frames[0]).isEqualTo(1);
+    clock.doFrame(32000000L);
+    assertThat(ticks[0]).isEqualTo(1);
+  }
+
+  @Test public void animationRevolutionsPerSecondDerivedFromSpeedAndDelay() {
+    button.setAnimationSpeed(2);
+    button.setAnimationDelay(50);
+    assertThat(button.getAnimationRevolutionsPerSecond()).isEqualTo(0.4f);
+
+    button.setAnimationRevolutionsPerSecond(1.5f);
+    assertThat(button.getAnimationRevolutionsPerSecond()).isEqualTo(1.5f);
+
+    button.setAnimationRevolutionsPerSecond(0);
+    assertThat(button.getAnimationRevolutionsPerSecond()).isEqualTo(0.4f);
+  }
+
+  @Test public void animationSpeedDoesNotDependOnMax() {
+    button.setAnimationSpeed(2);
+    button.setAnimationDelay(50);
+    button.setMax(8000000000L);
+    assertThat(button.getAnimationRevolutionsPerSecond()).isEqualTo(0.4f);
+
+    ProgressDrawable drawable = button.getProgressDrawable();
+    long frameTimeNanos = 16666667L;
+    button.startAnimating();
+    AnimationClock.getInstance().doFrame(frameTimeNanos);
+    final float stripAngle = drawable.getStripAngle();
+    AnimationClock.getInstance().doFrame(frameTimeNanos += 16666667L);
+    assertThat(drawable.getStripAngle()).isGreaterThan(stripAngle);
+    button.stopAnimating();
+  }
+
+  @Test public void invalidAnimationRevolutionsPerSecond() {
+    try {
+      button.setAnimationRevolutionsPerSecond(-1);
+      fail("Setting revolutions per second < 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void postingInvalidProgress() {
+    try {
+      button.postProgress(-1);
+      fail("Posting progress < 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void postingInvalidProgressAndMax() {
+    try {
+      button.postProgressAndMax(10, 5);
+      fail("Posting progress > max should throw");
+    } catch (IllegalArgumentException e) {
+    }
+
+    try {
+      button.postProgressAndMax(0, 0);
+      fail("Posting max = 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void staticLayerCache() {
+    assertThat(button.isStaticLayerCacheEnabled()).isFalse();
+    button.setStaticLayerCacheEnabled(true);
+    assertThat(button.isStaticLayerCacheEnabled()).isTrue();
+    button.setStaticLayerCacheEnabled(false);
+    assertThat(button.isStaticLayerCacheEnabled()).isFalse();
+  }
+
+  @Test public void staticLayersAreSharedBetweenDrawables() {
+    StaticLayerCache.clear();
+    final Drawable.ConstantState pinned = new EmptyConstantState();
+    final Drawable.ConstantState unpinned = new EmptyConstantState();
+    final Drawable.ConstantState shadow = new EmptyConstantState();
+    ProgressDrawable first = newCachedProgressDrawable(pinned, unpinned, shadow);
+    ProgressDrawable second = newCachedProgressDrawable(pinned, unpinned, shadow);
+    NoOpCanvas canvas = new NoOpCanvas();
+
+    first.draw(canvas);
+    final Bitmap unpinnedLayer = canvas.lastBitmap;
+    assertThat(unpinnedLayer).isNotNull();
+    second.draw(canvas);
+    assertThat(canvas.lastBitmap).isSameAs(unpinnedLayer);
+
+    second.setPinned(true);
+    second.draw(canvas);
+    assertThat(canvas.lastBitmap).isNotNull().isNotSameAs(unpinnedLayer);
+    assertThat(canvas.bitmapCount).isEqualTo(3);
+  }
+
+  @Test public void cachedStaticLayersAreNotDrawnAgain() {
+    StaticLayerCache.clear();
+    CountingDrawable icon = new CountingDrawable(new EmptyConstantState());
+    CountingDrawable shadow = new CountingDrawable(new EmptyConstantState());
+    ProgressDrawable drawable =
+        new ProgressDrawable(icon, icon, shadow, 32, 0xff000000, 0xffffffff);
+    drawable.setBounds(0, 0, 48, 48);
+    drawable.setStaticLayerCacheEnabled(true);
+    NoOpCanvas canvas = new NoOpCanvas();
+
+    for (int i = 0; i < 3; i++) {
+      drawable.draw(canvas);
+    }
+    // The icon and shadow are only drawn once, into the cached bitmap.
+    assertThat(icon.drawCount).isEqualTo(1);
+    assertThat(shadow.drawCount).isEqualTo(1);
+    assertThat(canvas.bitmapCount).isEqualTo(3);
+  }
+
+  private static ProgressDrawable newCachedProgressDrawable(Drawable.ConstantState pinned,
+      Drawable.ConstantState unpinned, Drawable.ConstantState shadow) {
+    final ProgressDrawable drawable =
+        new ProgressDrawable(new CountingDrawable(pinned), new CountingDrawable(unpinned),
+            new CountingDrawable(shadow), 32, 0xff000000, 0xffffffff);
+    drawable.setBounds(0, 0, 48, 48);
+    drawable.setStaticLayerCacheEnabled(true);
+    return drawable;
+  }
+
+  @Test public void arcPathResolution() {
+    assertThat(button.getArcPathResolution()).isEqualTo(0);
+    button.setArcPathResolution(360);
+    assertThat(button.getArcPathResolution()).isEqualTo(360);
+  }
+
+  @Test public void invalidArcPathResolution() {
+    try {
+      button.setArcPathResolution(-1);
+      fail("Setting resolution < 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void arcPathCacheIsShared() {
+    ArcPathCache cache = ArcPathCache.get(28, 360);
+    assertThat(ArcPathCache.get(28, 360)).isSameAs(cache);
+    assertThat(ArcPathCache.get(32, 360)).isNotSameAs(cache);
+    assertThat(cache.getWedge(90.2f)).isSameAs(cache.getWedge(89.8f));
+    assertThat(cache.getWedge(-10)).isSameAs(cache.getWedge(0));
+  }
+
+  @Test public void narrowWedgesAreAtLeastOneStep() {
+    ArcPathCache cache = ArcPathCache.get(28, 12);
+    assertThat(cache.getWedge(6)).isSameAs(cache.getWedge(30));
+    assertThat(cache.getWedge(6)).isNotSameAs(cache.getWedge(0));
+  }
+
+  @Test public void automaticHardwareLayerWhileAnimating() {
+    button.setAutomaticHardwareLayerEnabled(true);
+    assertThat(button.getLayerType()).isEqualTo(View.LAYER_TYPE_NONE);
+
+    button.startAnimating();
+    assertThat(button.getLayerType()).isEqualTo(View.LAYER_TYPE_HARDWARE);
+
+    button.stopAnimating();
+    assertThat(button.getLayerType()).isEqualTo(View.LAYER_TYPE_NONE);
+  }
+
+  @Test public void automaticHardwareLayerKeepsAppLayerType() {
+    button.setLayerType(View.LAYER_TYPE_SOFTWARE, null);
+    button.setAutomaticHardwareLayerEnabled(true);
+
+    button.startAnimating();
+    assertThat(button.getLayerType()).isEqualTo(View.LAYER_TYPE_SOFTWARE);
+
+    button.stopAnimating();
+    assertThat(button.getLayerType()).isEqualTo(View.LAYER_TYPE_SOFTWARE);
+  }
+
+  @Test public void animatedProgress() {
+    button.setProgress(50, true);
+    assertThat(button.getProgress()).isEqualTo(50);
+    assertThat(button.isAnimatingProgress()).isTrue();
+
+    button.setProgress(20);
+    assertThat(button.getProgress()).isEqualTo(20);
+    assertThat(button.isAnimatingProgress()).isFalse();
+  }
+
+  @Test public void animatingToCurrentProgressDoesNotTween() {
+    button.setProgress(50);
+    button.setProgress(50, true);
+    assertThat(button.isAnimatingProgress()).isFalse();
+  }
+
+  @Test public void tweenFollowsFrames() {
+    ProgressDrawable drawable = button.getProgressDrawable();
+    AnimationClock clock = AnimationClock.getInstance();
+    long frameTimeNanos = 16666667L;
+
+    button.setProgress(100, true);
+    clock.doFrame(frameTimeNanos);
+    assertThat(drawable.getSweepAngle()).isEqualTo(0f);
+    // Halfway through the 200ms tween, it has decelerated to three quarters of the way.
+    clock.doFrame(frameTimeNanos += 100000000L);
+    assertThat(drawable.getSweepAngle()).isEqualTo(270f);
+
+    // Retargeting carries on from where the arc is drawn.
+    button.setProgress(50, true);
+    clock.doFrame(frameTimeNanos += 16666667L);
+    assertThat(drawable.getSweepAngle()).isEqualTo(270f);
+    clock.doFrame(frameTimeNanos += 100000000L);
+    assertThat(drawable.getSweepAngle()).isEqualTo(202.5f);
+
+    clock.doFrame(frameTimeNanos += 200000000L);
+    assertThat(drawable.getSweepAngle()).isEqualTo(180f);
+    assertThat(button.isAnimatingProgress()).isFalse();
+  }
+
+  @Test public void invalidAnimatedProgressValue() {
+    try {
+      button.setProgress(101, true);
+      fail("Setting progress > max should throw");
+    } catch (IllegalArgumentException e) {
+    }
+    assertThat(button.isAnimatingProgress()).isFalse();
+  }
+
+  @Test public void drawableFollowsButton() {
+    ProgressDrawable drawable = button.getProgressDrawable();
+    button.setProgress(25);
+    assertThat(drawable.getSweepAngle()).isEqualTo(90f);
+
+    button.setPinned(true);
+    assertThat(drawable.isPinned()).isTrue();
+
+    button.startAnimating();
+    assertThat(drawable.isStripVisible()).isTrue();
+    button.stopAnimating();
+    assertThat(drawable.isStripVisible()).isFalse();
+  }
+
+  @Test public void standaloneDrawable() {
+    ProgressDrawable drawable = new ProgressDrawable(activity.getResources());
+    drawable.setProgress(50, 100);
+    assertThat(drawable.getSweepAngle()).isEqualTo(180f);
+
+    drawable.setLevel(2500);
+    assertThat(drawable.getSweepAngle()).isEqualTo(90f);
+  }
+
+  @Test public void sharedPaints() {
+    assertThat(SharedResources.getPaint(0xff33b5e5)).isSameAs(SharedResources.getPaint(0xff33b5e5));
+    assertThat(SharedResources.getPaint(0xff33b5e5).getColor()).isEqualTo(0xff33b5e5);
+  }
+
+  @Test public void settingColorDoesNotAffectOtherButtons() {
+    ProgressButton other = new ProgressButton(activity);
+    int progressColor = other.getProgressColor();
+
+    button.setProgressColor(0xff00ff00);
+    assertThat(button.getProgressColor()).isEqualTo(0xff00ff00);
+    assertThat(other.getProgressColor()).isEqualTo(progressColor);
+  }
+
+  @Test public void animationClockTicksDoNotAllocate() {
+    final AnimationClock clock = new AnimationClock(new AnimationClock.FrameScheduler() {
+      @Override void postFrame() {
+      }
+
+      @Override void cancelFrame() {
+      }
+    });
+    final AnimationClock.Callback[] callbacks = new AnimationClock.Callback[10];
+    for (int i = 0; i < callbacks.length; i++) {
+      callbacks[i] = new AnimationClock.Callback() {
+        @Override public void doFrame(long frameTimeNanos) {
+        }
+      };
+      clock.addCallback(callbacks[i]);
+    }
+
+    AllocationTracker.assertNoAllocations("doFrame", 5000, new AllocationTracker.Operation() {
+      @Override public void run(int iteration) {
+        // Callbacks come and go between frames, like tweens starting and finishing.
+        final AnimationClock.Callback callback = callbacks[iteration % callbacks.length];
+        clock.removeCallback(callback);
+        clock.doFrame(iteration * 16666667L);
+        clock.addCallback(callback);
+      }
+    });
+  }
+
+  @Test public void drawingAndUpdatingDoesNotAllocate() {
+    final ProgressDrawable drawable =
+        new ProgressDrawable(new EmptyDrawable(), new EmptyDrawable(), new EmptyDrawable(), 32,
+            0xff000000, 0xffffffff);
+    drawable.setBounds(0, 0, 48, 48);
+    drawable.setStripVisible(true);
+    final Canvas canvas = new NoOpCanvas();
+    final AllocationTracker.Operation frame = new AllocationTracker.Operation() {
+      @Override public void run(int iteration) {
+        drawable.setProgress(iteration % 101, 100);
+        drawable.setStripAngle(iteration % 360);
+        drawable.draw(canvas);
+      }
+    };
+
+    AllocationTracker.assertNoAllocations("draw", 5000, frame);
+    drawable.setArcPathResolution(360);
+    AllocationTracker.assertNoAllocations("draw with arc paths", 5000, frame);
+  }
+
+  @Test public void buttonUpdatesAndFramesDoNotAllocate() {
+    final InvalidationRecordingButton recording = new InvalidationRecordingButton(activity);
+    // Keeps the clock busy, so tweens starting and finishing don't schedule or cancel frames.
+    final AnimationClock.Callback idle = new AnimationClock.Callback() {
+      @Override public void doFrame(long frameTimeNanos) {
+      }
+    };
+    final AllocationTracker.Operation frame = new AllocationTracker.Operation() {
+      @Override public void run(int iteration) {
+        final long frameTimeNanos = (iteration + 1) * 16666667L;
+        // Progress between 0 and the max keeps the content description as it is.
+        recording.setProgress(1 + iteration % 99, iteration % 2 == 0);
+        recording.doTweenFrame(frameTimeNanos);
+        recording.doAnimationFrame(frameTimeNanos);
+        recording.applyPendingProgress();
+      }
+    };
+
+    AnimationClock.getInstance().addCallback(idle);
+    recording.startAnimating();
+    try {
+      AllocationTracker.assertNoAllocations("button frame", 5000, frame);
+    } finally {
+      recording.stopAnimating();
+      AnimationClock.getInstance().removeCallback(idle);
+    }
+  }
+
+  @Test public void groupAppliesLatestUpdates() {
+    ProgressButton other = new ProgressButton(activity);
+    ProgressButtonGroup group = new ProgressButtonGroup();
+    ProgressButtonGroup.OnButtonUpdatedListener listener =
+        mock(ProgressButtonGroup.OnButtonUpdatedListener.class);
+    group.setOnButtonUpdatedListener(listener);
+
+    group.setProgress(button, 10);
+    group.setProgress(button, 20);
+    group.update(other, 5, 50, true);
+    assertThat(group.hasPendingUpdates()).isTrue();
+    assertThat(button.getProgress()).isEqualTo(0);
+
+    group.apply();
+    assertThat(group.hasPendingUpdates()).isFalse();
+    assertThat(button.getProgress()).isEqualTo(20);
+    assertThat(other.getProgress()).isEqualTo(5);
+    assertThat(other.getMax()).isEqualTo(50);
+    assertThat(other.isPinned()).isTrue();
+    verify(listener).onButtonUpdated(button);
+    verify(listener).onButtonUpdated(other);
+  }
+
+  @Test public void groupOnlyNotifiesChangedButtons() {
+    ProgressButtonGroup group = new ProgressButtonGroup();
+    ProgressButtonGroup.OnButtonUpdatedListener listener =
+        mock(ProgressButtonGroup.OnButtonUpdatedListener.class);
+    group.setOnButtonUpdatedListener(listener);
+
+    group.setProgress(button, button.getProgress());
+    group.apply();
+    verify(listener, never()).onButtonUpdated(button);
+  }
+
+  @Test public void groupRejectsInvalidUpdates() {
+    ProgressButtonGroup group = new ProgressButtonGroup();
+    try {
+      group.setProgress(button, button.getMax() + 1);
+      fail("Progress cannot be greater than max.");
+    } catch (IllegalArgumentException e) {
+    }
+    assertThat(group.hasPendingUpdates()).isFalse();
+  }
+
+  @Test public void contentDescriptionFollowsState() {
+    button.setPinned(false);
+    button.setProgress(0);
+    assertThat(button.getDownloadState()).isEqualTo(ProgressButton.DOWNLOAD_STATE_NOT_DOWNLOADED);
+    assertThat(button.getContentDescription()).isEqualTo(
+        button.getStateContentDescription(false, ProgressButton.DOWNLOAD_STATE_NOT_DOWNLOADED));
+
+    button.setProgress(50);
+    assertThat(button.getDownloadState()).isEqualTo(ProgressButton.DOWNLOAD_STATE_DOWNLOADING);
+    assertThat(button.getContentDescription()).isEqualTo(
+        button.getStateContentDescription(false, ProgressButton.DOWNLOAD_STATE_DOWNLOADING));
+
+    button.setPinned(true);
+    button.setProgress(100);
+    assertThat(button.getDownloadState()).isEqualTo(ProgressButton.DOWNLOAD_STATE_DOWNLOADED);
+    assertThat(button.getContentDescription()).isEqualTo(
+        button.getStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_DOWNLOADED));
+  }
+
+  @Test public void contentDescriptionOnlySetWhenStateChanges() {
+    button.setProgress(10);
+    button.setContentDescription("custom");
+    button.setProgress(20);
+    assertThat(button.getContentDescription()).isEqualTo("custom");
+  }
+
+  @Test public void contentDescriptionFromXmlIsKept() {
+    AttributeSet attrs = new RoboAttributeSet(Arrays.asList(
+        new Attribute("android:attr/contentDescription", "Offline copy", "android")),
+        Robolectric.shadowOf(activity.getResources()).getResourceLoader(), ProgressButton.class);
+    ProgressButton inflated = new ProgressButton(activity, attrs);
+    assertThat(inflated.isAutomaticContentDescriptionEnabled()).isFalse();
+    assertThat(inflated.getContentDescription()).isEqualTo("Offline copy");
+
+    inflated.setPinned(true);
+    inflated.setProgress(50);
+    assertThat(inflated.getContentDescription()).isEqualTo("Offline copy");
+  }
+
+  @Test public void customStateContentDescription() {
+    button.setPinned(true);
+    button.setProgress(50);
+    button.setStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_DOWNLOADING, "Syncing");
+    assertThat(button.getContentDescription()).isEqualTo("Syncing");
+
+    button.setAutomaticContentDescriptionEnabled(false);
+    button.setProgress(0);
+    assertThat(button.getContentDescription()).isEqualTo("Syncing");
+  }
+
+  @Test public void invalidDownloadState() {
+    try {
+      button.setStateContentDescription(true, 3, "Invalid");
+      fail("Download state must be valid.");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void longProgress() {
+    button.setProgressAndMax(3000000000L, 6000000000L);
+    assertThat(button.getProgressLong()).isEqualTo(3000000000L);
+    assertThat(button.getMaxLong()).isEqualTo(6000000000L);
+    assertThat(button.getProgress()).isEqualTo(Integer.MAX_VALUE);
+    assertThat(button.getProgressDrawable().getSweepAngle()).isEqualTo(180f);
+
+    button.setProgress(6000000000L - 1);
+    assertThat(button.getProgressDrawable().getSweepAngle()).isLessThan(360f);
+    assertThat(button.getDownloadState()).isEqualTo(ProgressButton.DOWNLOAD_STATE_DOWNLOADING);
+  }
+
+  @Test public void progressFraction() {
+    button.setMax(200);
+    button.setProgressFraction(0.25f);
+    assertThat(button.getProgress()).isEqualTo(50);
+    assertThat(button.getProgressFraction()).isEqualTo(0.25f);
+  }
+
+  @Test public void invalidProgressFraction() {
+    try {
+      button.setProgressFraction(1.5f);
+      fail("Fraction cannot be greater than 1.");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      button.setProgressFraction(Float.NaN);
+      fail("Fraction must be a number.");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void minimumVisibleProgressDelta() {
+    assertThat(button.getMinimumVisibleProgressDelta()).isEqualTo(1);
+
+    button.setMax(1000000000L);
+    assertThat(button.getMinimumVisibleProgressDelta()).isGreaterThan(1);
+
+    button.setMax(1000);
+    button.setArcPathResolution(100);
+    assertThat(button.getMinimumVisibleProgressDelta()).isEqualTo(10);
+  }
+
+  @Test public void invisibleSweepChangesDoNotRedraw() {
+    ProgressDrawable drawable = new ProgressDrawable(activity.getResources());
+    Drawable.Callback callback = mock(Drawable.Callback.class);
+    drawable.setCallback(callback);
+    drawable.setArcPathResolution(36);
+    reset(callback);
+
+    drawable.setSweepAngle(100);
+    verify(callback, times(1)).invalidateDrawable(drawable);
+    drawable.setSweepAngle(105);
+    verify(callback, times(1)).invalidateDrawable(drawable);
+    assertThat(drawable.getSweepAngle()).isEqualTo(105f);
+    drawable.setSweepAngle(110);
+    verify(callback, times(2)).invalidateDrawable(drawable);
+    drawable.setSweepAngle(360);
+    verify(callback, times(3)).invalidateDrawable(drawable);
+  }
+
+  @Test public void bindAppliesState() {
+    ProgressState state = new ProgressState(30, 60, true);
+    state.setAnimating(true);
+    button.bind(state);
+    assertThat(button.getBoundState()).isSameAs(state);
+    assertThat(button.getProgress()).isEqualTo(30);
+    assertThat(button.getMax()).isEqualTo(60);
+    assertThat(button.isPinned()).isTrue();
+    assertThat(button.isAnimating()).isTrue();
+
+    state.setProgress(40);
+    state.setAnimating(false);
+    assertThat(button.getProgress()).isEqualTo(40);
+    assertThat(button.isAnimating()).isFalse();
+
+    button.toggle();
+    assertThat(state.isPinned()).isFalse();
+  }
+
+  @Test public void stateBoundToOneButtonAtATime() {
+    ProgressState state = new ProgressState();
+    ProgressButton other = new ProgressButton(activity);
+    button.bind(state);
+    other.bind(state);
+    assertThat(button.getBoundState()).isNull();
+    assertThat(other.getBoundState()).isSameAs(state);
+
+    state.setProgress(10);
+    assertThat(button.getProgress()).isEqualTo(0);
+    assertThat(other.getProgress()).isEqualTo(10);
+  }
+
+  @Test public void detachedButtonCatchesUpWithState() {
+    ProgressState state = new ProgressState();
+    button.bind(state);
+    button.onDetachedFromWindow();
+    state.setProgress(50);
+    assertThat(button.getProgress()).isEqualTo(0);
+
+    button.onAttachedToWindow();
+    assertThat(button.getProgress()).isEqualTo(50);
+  }
+
+  @Test public void detachedButtonWritesBackToState() {
+    ProgressState state = new ProgressState();
+    button.bind(state);
+    button.onDetachedFromWindow();
+    button.setProgressAndMax(20, 200);
+    button.setPinned(true);
+    button.startAnimating();
+    assertThat(state.getProgress()).isEqualTo(20);
+    assertThat(state.getMax()).isEqualTo(200);
+    assertThat(state.isPinned()).isTrue();
+    assertThat(state.isAnimating()).isTrue();
+
+    // Writing back one change leaves changes made to the state in the meantime.
+    state.setProgress(50);
+    button.stopAnimating();
+    assertThat(state.getProgress()).isEqualTo(50);
+    assertThat(state.isAnimating()).isFalse();
+
+    button.onAttachedToWindow();
+    assertThat(button.getProgress()).isEqualTo(50);
+    assertThat(button.isAnimating()).isFalse();
+  }
+
+  @Test public void animatedProgressIsWrittenBackToState() {
+    ProgressState state = new ProgressState();
+    button.bind(state);
+    button.setProgress(50, true);
+    assertThat(state.getProgress()).isEqualTo(50);
+
+    button.onDetachedFromWindow();
+    button.onAttachedToWindow();
+    assertThat(button.getProgress()).isEqualTo(50);
+    assertThat(state.getProgress()).isEqualTo(50);
+  }
+
+  @Test public void animationPausedWhileDetached() {
+    button.startAnimating();
+    assertThat(button.isAnimationPaused()).isFalse();
+
+    button.onDetachedFromWindow();
+    assertThat(button.isAnimating()).isTrue();
+    assertThat(button.isAnimationPaused()).isTrue();
+
+    button.onAttachedToWindow();
+    assertThat(button.isAnimationPaused()).isFalse();
+    button.stopAnimating();
+  }
+
+  @Test public void animationPausedWhileHidden() {
+    button.startAnimating();
+    button.setVisibility(View.GONE);
+    assertThat(button.isAnimationPaused()).isTrue();
+
+    button.setVisibility(View.VISIBLE);
+    assertThat(button.isAnimationPaused()).isFalse();
+    button.stopAnimating();
+  }
+
+  @Test public void animationPausedUntilDrawn() {
+    button.startAnimating();
+    long frameTimeNanos = 16666667L;
+    for (int i = 0; i < 40; i++) {
+      AnimationClock.getInstance().doFrame(frameTimeNanos += 16666667L);
+    }
+    assertThat(button.isAnimationPaused()).isTrue();
+
+    button.onDraw(new Canvas());
+    assertThat(button.isAnimationPaused()).isFalse();
+    button.stopAnimating();
+  }
+
+  @Test public void detachAppliesPendingWork() {
+    ProgressState state = new ProgressState();
+    button.bind(state);
+    button.setProgress(50, true);
+    button.postProgress(75);
+    button.onDetachedFromWindow();
+
+    assertThat(button.getProgress()).isEqualTo(75);
+    assertThat(button.isAnimatingProgress()).isFalse();
+    assertThat(button.getProgressDrawable().getSweepAngle()).isEqualTo(270f);
+    assertThat(state.getProgress()).isEqualTo(75);
+
+    // Attaching again applies the state, which still holds the flushed progress.
+    button.onAttachedToWindow();
+    assertThat(button.getProgress()).isEqualTo(75);
+  }
+
+  @Test public void segments() {
+    button.setSegments(100, 300);
+    assertThat(button.getSegmentCount()).isEqualTo(2);
+    assertThat(button.getSegmentSize(1)).isEqualTo(300);
+    assertThat(button.getMaxLong()).isEqualTo(400);
+    assertThat(button.getProgressLong()).isEqualTo(0);
+
+    ProgressDrawable drawable = button.getProgressDrawable();
+    assertThat(drawable.getSegmentCount()).isEqualTo(2);
+    assertThat(drawable.getSegmentStartAngle(1)).isEqualTo(90f);
+
+    button.postSegmentProgress(0, 100);
+    button.postSegmentProgress(1, 150);
+    assertThat(button.getSegmentProgress(1)).isEqualTo(150);
+    // Detaching applies posted progress right away.
+    button.onDetachedFromWindow();
+    assertThat(button.getProgressLong()).isEqualTo(250);
+    assertThat(drawable.getSegmentSweepAngle(0)).isEqualTo(90f);
+    assertThat(drawable.getSegmentSweepAngle(1)).isEqualTo(135f);
+    button.onAttachedToWindow();
+
+    button.setProgress(300);
+    assertThat(button.getSegmentCount()).isEqualTo(0);
+    assertThat(drawable.getSegmentCount()).isEqualTo(0);
+    assertThat(button.getMaxLong()).isEqualTo(400);
+  }
+
+  @Test public void invalidSegments() {
+    try {
+      button.setSegments(100, 0);
+      fail("Setting a segment size <= 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+
+    button.setSegments(100);
+    try {
+      button.postSegmentProgress(1, 10);
+      fail("Posting progress of a missing segment should throw");
+    } catch (IllegalArgumentException e) {
+    }
+
+    try {
+      button.postSegmentProgress(0, 101);
+      fail("Posting segment progress > size should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void metricsDisabledByDefault() {
+    assertThat(button.isMetricsEnabled()).isFalse();
+    assertThat(button.getMetrics()).isNull();
+  }
+
+  @Test public void metrics() {
+    ProgressButton.resetGlobalMetrics();
+    button.setMax(100000);
+    button.setMetricsEnabled(true);
+
+    button.setProgress(50000);
+    button.setProgress(50001);
+    button.onDraw(new Canvas());
+    ProgressButtonMetrics metrics = button.getMetrics();
+    assertThat(metrics.getDrawCount()).isEqualTo(1);
+    assertThat(metrics.getInvalidationCount()).isEqualTo(1);
+    assertThat(metrics.getSkippedInvalidationCount()).isEqualTo(1);
+
+    button.startAnimating();
+    long frameTimeNanos = 16666667L;
+    AnimationClock.getInstance().doFrame(frameTimeNanos);
+    AnimationClock.getInstance().doFrame(frameTimeNanos += 16666667L);
+    // Four frames were skipped.
+    AnimationClock.getInstance().doFrame(frameTimeNanos += 5 * 16666667L);
+    button.stopAnimating();
+    metrics = button.getMetrics();
+    assertThat(metrics.getTickCount()).isEqualTo(3);
+    assertThat(metrics.getDroppedFrameCount()).isEqualTo(4);
+
+    assertThat(ProgressButton.getGlobalMetrics().getTickCount()).isEqualTo(3);
+    button.resetMetrics();
+    assertThat(button.getMetrics().getTickCount()).isEqualTo(0);
+    assertThat(ProgressButton.getGlobalMetrics().getTickCount()).isEqualTo(3);
+  }
+
+  @Test public void progressInputStream() throws IOException {
+    ProgressInputStream in =
+        new ProgressInputStream(new ByteArrayInputStream(new byte[1000]), button, 1000, 0);
+    byte[] buffer = new byte[300];
+    while (in.read(buffer) != -1) {
+    }
+    in.close();
+    assertThat(in.getCount()).isEqualTo(1000);
+
+    // Detaching applies posted progress right away.
+    button.onDetachedFromWindow();
+    assertThat(button.getProgressLong()).isEqualTo(1000);
+    assertThat(button.getMaxLong()).isEqualTo(1000);
+    button.onAttachedToWindow();
+  }
+
+  @Test public void progressInputStreamOfUnknownLength() throws IOException {
+    button.setProgress(10);
+    ProgressInputStream in =
+        new ProgressInputStream(new ByteArrayInputStream(new byte[1000]), button, -1, 0);
+    byte[] buffer = new byte[300];
+    while (in.read(buffer) != -1) {
+    }
+    in.close();
+    assertThat(in.getCount()).isEqualTo(1000);
+
+    button.onDetachedFromWindow();
+    assertThat(button.getProgressLong()).isEqualTo(10);
+    assertThat(button.getMaxLong()).isEqualTo(100);
+    button.onAttachedToWindow();
+  }
+
+  @Test public void progressInputStreamMarkAndReset() throws IOException {
+    ProgressInputStream in =
+        new ProgressInputStream(new ByteArrayInputStream(new byte[100]), button, 100, 0);
+    in.read(new byte[20]);
+    in.mark(100);
+    in.skip(30);
+    assertThat(in.getCount()).isEqualTo(50);
+    in.reset();
+    assertThat(in.getCount()).isEqualTo(20);
+
+    button.onDetachedFromWindow();
+    assertThat(button.getProgressLong()).isEqualTo(20);
+    assertThat(button.getMaxLong()).isEqualTo(100);
+    button.onAttachedToWindow();
+  }
+
+  @Test public void progressReadableByteChannel() throws IOException {
+    ReadableByteChannel channel = Channels.newChannel(new ByteArrayInputStream(new byte[2000]));
+    ProgressReadableByteChannel progressChannel =
+        new ProgressReadableByteChannel(channel, button, 4000, 0);
+    ByteBuffer buffer = ByteBuffer.allocate(512);
+    while (progressChannel.read(buffer) != -1) {
+      buffer.clear();
+    }
+    assertThat(progressChannel.getCount()).isEqualTo(2000);
+
+    button.onDetachedFromWindow();
+    assertThat(button.getProgressLong()).isEqualTo(2000);
+    assertThat(button.getMaxLong()).isEqualTo(4000);
+    button.onAttachedToWindow();
+  }
+
+  @Test public void progressInputStreamDoesNotLeakButton() throws IOException {
+    final ProgressInputStream[] in = new ProgressInputStream[1];
+    final WeakReference<ProgressButton> reference = createReadButton(in);
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+      System.runFinalization();
+    }
+    assertThat(reference.get()).isNull();
+
+    // Reading on stops posting instead of failing.
+    byte[] buffer = new byte[300];
+    while (in[0].read(buffer) != -1) {
+    }
+    in[0].close();
+    assertThat(in[0].getCount()).isEqualTo(1000);
+  }
+
+  /** Returns a reference to a button that a stream which has been read from posts progress to. */
+  private WeakReference<ProgressButton> createReadButton(ProgressInputStream[] in)
+      throws IOException {
+    final ProgressButton reading = new ProgressButton(activity);
+    in[0] = new ProgressInputStream(new ByteArrayInputStream(new byte[1000]), reading, 1000, 0);
+    in[0].read(new byte[100]);
+    return new WeakReference<ProgressButton>(reading);
+  }
+
+  @Test public void configFromStyleMatchesInflatedButton() {
+    ProgressButtonConfig config =
+        ProgressButtonConfig.fromStyle(activity, R.attr.progressButtonStyle);
+    ProgressButton configured = config.newButton(activity);
+    assertThat(configured.getMaxLong()).isEqualTo(button.getMaxLong());
+    assertThat(configured.getCircleColor()).isEqualTo(button.getCircleColor());
+    assertThat(configured.getProgressColor()).isEqualTo(button.getProgressColor());
+    assertThat(configured.getInnerSize()).isEqualTo(button.getInnerSize());
+    assertThat(configured.getAnimationStripWidth()).isEqualTo(button.getAnimationStripWidth());
+    assertThat(configured.getStateContentDescription(true,
+        ProgressButton.DOWNLOAD_STATE_DOWNLOADING)).isEqualTo(
+        button.getStateContentDescription(true, ProgressButton.DOWNLOAD_STATE_DOWNLOADING));
+  }
+
+  @Test public void configBuilder() {
+    ProgressButtonConfig config = new ProgressButtonConfig.Builder(activity.getResources())
+        .setProgressAndMax(30, 60)
+        .setPinned(true)
+        .setCircleColor(Color.RED)
+        .setArcPathResolution(120)
+        .build();
+    ProgressButton configured = config.newButton(activity);
+    assertThat(configured.getProgress()).isEqualTo(30);
+    assertThat(configured.getMax()).isEqualTo(60);
+    assertThat(configured.isPinned()).isTrue();
+    assertThat(configured.getCircleColor()).isEqualTo(Color.RED);
+    assertThat(configured.getArcPathResolution()).isEqualTo(120);
+
+    ProgressButtonConfig changed = config.newBuilder().setPinned(false).build();
+    assertThat(changed.isPinned()).isFalse();
+    assertThat(changed.getMax()).isEqualTo(60);
+    assertThat(config.isPinned()).isTrue();
+  }
+
+  @Test public void invalidConfig() {
+    try {
+      new ProgressButtonConfig.Builder(activity.getResources()).setProgressAndMax(10, 5);
+      fail("Setting progress > max should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void pool() {
+    ProgressButtonPool pool = new ProgressButtonPool(activity,
+        ProgressButtonConfig.fromStyle(activity, R.attr.progressButtonStyle), 4);
+    assertThat(pool.getCapacity()).isEqualTo(4);
+    assertThat(pool.getAvailableCount()).isEqualTo(0);
+    // An empty pool creates buttons on demand.
+    assertThat(pool.acquire()).isNotNull();
+    pool.clear();
+
+    try {
+      new ProgressButtonPool(activity, null, 0);
+      fail("Setting capacity <= 0 should throw");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test public void updatesDoNotRequestLayout() {
+    measureAndLayout(button);
+    button.setProgress(50);
+    button.setMax(200);
+    button.setProgressColor(Color.RED);
+    button.setCircleColor(Color.BLUE);
+    button.setPinned(true);
+    button.startAnimating();
+    button.stopAnimating();
+    button.setInnerSize(button.getInnerSize() / 2);
+    button.setPinnedDrawable(new EmptyDrawable(10));
+    button.setShadowDrawable(new EmptyDrawable(button.getShadowDrawable().getIntrinsicWidth()));
+    assertThat(button.isLayoutRequested()).isFalse();
+  }
+
+  @Test public void shadowDrawableOfNewSizeRequestsLayout() {
+    measureAndLayout(button);
+    final int size = button.getMeasuredWidth() + 10;
+    button.setShadowDrawable(new EmptyDrawable(size));
+    assertThat(button.isLayoutRequested()).isTrue();
+
+    measureAndLayout(button);
+    assertThat(button.getMeasuredWidth()).isEqualTo(size);
+    assertThat(button.getMeasuredHeight()).isEqualTo(size);
+  }
+
+  private static void measureAndLayout(View view) {
+    final int spec = View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+    view.measure(spec, spec);
+    view.layout(0, 0, view.getMeasuredWidth(), view.getMeasuredHeight());
+  }
+
+  @Test public void progressInvalidatesOnlyTheInnerCircle() {
+    InvalidationRecordingButton recording = new InvalidationRecordingButton(activity);
+    measureAndLayout(recording);
+    recording.resetInvalidations();
+
+    recording.setProgress(50);
+    assertThat(recording.rectInvalidations).isEqualTo(1);
+    assertThat(recording.fullInvalidations).isEqualTo(0);
+    assertThat(recording.lastDirty).isEqualTo(recording.getProgressDrawable().getInnerBounds());
+  }
+
+  @Test public void unchangedSweepAngleDoesNotInvalidate() {
+    InvalidationRecordingButton recording = new InvalidationRecordingButton(activity);
+    recording.setProgress(50);
+    recording.resetInvalidations();
+
+    recording.setProgress(50);
+    recording.setProgressAndMax(100, 200);
+    assertThat(recording.rectInvalidations).isEqualTo(0);
+    assertThat(recording.fullInvalidations).isEqualTo(0);
+  }
+
+  @Test public void postedProgressIsAppliedOnceOnTheNextFrame() {
+    InvalidationRecordingButton recording = new InvalidationRecordingButton(activity);
+    measureAndLayout(recording);
+    recording.resetInvalidations();
+
+    for (int progress = 10; progress <= 50; progress += 10) {
+      recording.postProgress(progress);
+    }
+    Robolectric.runUiThreadTasks();
+    AnimationClock.getInstance().doFrame(16666667L);
+    assertThat(recording.getProgress()).isEqualTo(50);
+    assertThat(recording.rectInvalidations).isEqualTo(1);
+    assertThat(recording.fullInvalidations).isEqualTo(0);
+  }
+
+  @Test public void schedulingDoesNotLeakButtons() {
+    final ProgressState state = new ProgressState(10, 100, false);
+    final WeakReference<ProgressButton> reference = createBusyButton(state);
+    for (int i = 0; i < 20 && reference.get() != null; i++) {
+      System.gc();
+      System.runFinalization();
+    }
+    assertThat(reference.get()).isNull();
+    assertThat(state.getButton()).isNull();
+
+    // Callbacks of the collected button remove themselves.
+    long frameTimeNanos = 16666667L;
+    for (int i = 0; i < 3; i++) {
+      AnimationClock.getInstance().doFrame(frameTimeNanos += 16666667L);
+    }
+    Robolectric.runUiThreadTasksIncludingDelayedTasks();
+    state.setProgress(20);
+  }
+
+  /** Returns a reference to a button that is animating, tweening and has progress posted. */
+  private WeakReference<ProgressButton> createBusyButton(ProgressState state) {
+    final ProgressButton busy = new ProgressButton(activity);
+    busy.bind(state);
+    busy.startAnimating();
+    busy.setProgress(50, true);
+    busy.postProgress(75);
+    return new WeakReference<ProgressButton>(busy);
+  }
+
+  /** Counts invalidations instead of passing them on to the framework. */
+  private static class InvalidationRecordingButton extends ProgressButton {
+    final Rect lastDirty = new Rect();
+    int rectInvalidations;
+    int fullInvalidations;
+
+    InvalidationRecordingButton(Context context) {
+      super(context);
+    }
+
+    void resetInvalidations() {
+      rectInvalidations = 0;
+      fullInvalidations = 0;
+    }
+
+    @Override public void invalidate(Rect dirty) {
+      lastDirty.set(dirty);
+      rectInvalidations++;
+    }
+
+    @Override public void invalidate(int l, int t, int r, int b) {
+      lastDirty.set(l, t, r, b);
+      rectInvalidations++;
+    }
+
+    @Override public void invalidate() {
+      fullInvalidations++;
+    }
+  }
+
+  /** Draws nothing, so that only the allocations of the caller are counted. */
+  private static class NoOpCanvas extends Canvas {
+    Bitmap lastBitmap;
+    int bitmapCount;
+
+    @Override public void drawArc(RectF oval, float startAngle, float sweepAngle,
+        boolean useCenter, Paint paint) {
+    }
+
+    @Override public void drawPath(Path path, Paint paint) {
+    }
+
+    @Override public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+      lastBitmap = bitmap;
+      bitmapCount++;
+    }
+
+    @Override public int save() {
+      return 1;
+    }
+
+    @Override public void restoreToCount(int saveCount) {
+    }
+
+    @Override public void translate(float dx, float dy) {
+    }
+
+    @Override public void rotate(float degrees, float px, float py) {
+    }
+  }
+
+  private static class EmptyDrawable extends Drawable {
+    private final int size;
+
+    EmptyDrawable() {
+      this(-1);
+    }
+
+    EmptyDrawable(int size) {
+      this.size = size;
+    }
+
+    @Override public int getIntrinsicWidth() {
+      return size;
+    }
+
+    @Override public int getIntrinsicHeight() {
+      return size;
+    }
+
+    @Override public void draw(Canvas canvas) {
+    }
+
+    @Override public void setAlpha(int alpha) {
+    }
+
+    @Override public void setColorFilter(ColorFilter cf) {
+    }
+
+    @Override public int getOpacity() {
+      return PixelFormat.TRANSPARENT;
+    }
+  }
+
+  /** A 48 pixel drawable that can be cached through the given constant state, counting draws. */
+  private static class CountingDrawable extends EmptyDrawable {
+    private final ConstantState state;
+    int drawCount;
+
+    CountingDrawable(ConstantState state) {
+      super(48);
+      this.state = state;
+    }
+
+    @Override public ConstantState getConstantState() {
+      return state;
+    }
+
+    @Override public void draw(Canvas canvas) {
+      drawCount++;
+    }
+  }
+
+  private static class EmptyConstantState extends Drawable.ConstantState {
+    @Override public Drawable newDrawable() {
+      return new CountingDrawable(this);
+    }
+
+    @Override public int getChangingConfigurations() {
+      return 0;
+    }
+  }
 }